@@ -0,0 +1,42 @@
+package org.wickedsource.docxstamper;
+
+import java.io.ByteArrayInputStream;
+
+import org.docx4j.openpackaging.exceptions.Docx4JException;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.wickedsource.docxstamper.template.SiteTable;
+
+/**
+ * <p>
+ * A .docx template that has been read and analyzed once by {@link DocxStamper#compile(java.io.InputStream)} and can
+ * then be stamped any number of times with {@link DocxStamper#stamp(CompiledTemplate, Object, java.io.OutputStream)}.
+ * </p>
+ * <p>
+ * The compiled template keeps the template in memory together with the addresses of all paragraphs that contain
+ * expressions or comments, so stamping it does not have to search the whole document again. A compiled template is
+ * immutable and may be shared between threads. It should only be stamped by the DocxStamper that compiled it.
+ * </p>
+ */
+public class CompiledTemplate {
+
+  private final byte[] templateBytes;
+
+  private final SiteTable sites;
+
+  CompiledTemplate(byte[] templateBytes, SiteTable sites) {
+    this.templateBytes = templateBytes;
+    this.sites = sites;
+  }
+
+  /**
+   * Creates a fresh copy of the template document which may then be modified by a single stamping run.
+   */
+  WordprocessingMLPackage createDocument() throws Docx4JException {
+    return WordprocessingMLPackage.load(new ByteArrayInputStream(templateBytes));
+  }
+
+  SiteTable getSites() {
+    return sites;
+  }
+
+}
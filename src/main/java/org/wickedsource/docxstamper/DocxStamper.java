@@ -1,47 +1,90 @@
 package org.wickedsource.docxstamper;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import javax.xml.bind.JAXBElement;
+
+import org.apache.commons.io.IOUtils;
+import org.docx4j.XmlUtils;
+import org.docx4j.jaxb.Context;
+import org.docx4j.openpackaging.exceptions.Docx4JException;
 import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
+import org.docx4j.wml.ObjectFactory;
+import org.docx4j.wml.P;
+import org.docx4j.wml.PPr;
+import org.docx4j.wml.SectPr;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wickedsource.docxstamper.api.DocumentSink;
 import org.wickedsource.docxstamper.api.DocxStamperException;
 import org.wickedsource.docxstamper.api.commentprocessor.ICommentProcessor;
+import org.wickedsource.docxstamper.api.commentprocessor.ICommentProcessorFactory;
 import org.wickedsource.docxstamper.api.typeresolver.ITypeResolver;
 import org.wickedsource.docxstamper.api.typeresolver.TypeResolverRegistry;
-import org.wickedsource.docxstamper.el.ExpressionResolver;
-import org.wickedsource.docxstamper.processor.CommentProcessorRegistry;
+import org.wickedsource.docxstamper.el.InterfaceMethodResolver;
 import org.wickedsource.docxstamper.processor.displayif.DisplayIfProcessor;
 import org.wickedsource.docxstamper.processor.displayif.IDisplayIfProcessor;
-import org.wickedsource.docxstamper.processor.repeat.IRepeatProcessor;
-import org.wickedsource.docxstamper.processor.repeat.RepeatProcessor;
 import org.wickedsource.docxstamper.processor.replaceExpression.IReplaceWithProcessor;
 import org.wickedsource.docxstamper.processor.replaceExpression.ReplaceWithProcessor;
-import org.wickedsource.docxstamper.proxy.ProxyBuilder;
-import org.wickedsource.docxstamper.proxy.ProxyException;
-import org.wickedsource.docxstamper.replace.PlaceholderReplacer;
 import org.wickedsource.docxstamper.replace.typeresolver.DateResolver;
 import org.wickedsource.docxstamper.replace.typeresolver.FallbackResolver;
+import org.wickedsource.docxstamper.replace.typeresolver.TemporalResolver;
 import org.wickedsource.docxstamper.replace.typeresolver.image.Image;
 import org.wickedsource.docxstamper.replace.typeresolver.image.ImageResolver;
+import org.wickedsource.docxstamper.template.ResolvedSiteTable;
+import org.wickedsource.docxstamper.template.SiteCollector;
+import org.wickedsource.docxstamper.template.SiteTable;
+import org.wickedsource.docxstamper.util.AnnotationIdAllocator;
+import org.wickedsource.docxstamper.util.DrawingIdAllocator;
+import org.wickedsource.docxstamper.util.ExecutorUtil;
+import org.wickedsource.docxstamper.util.NumberingUtil;
+import org.wickedsource.docxstamper.util.walk.BaseDocumentWalker;
 
 /**
  * <p>
  * Main class of the docx-stamper library. This class can be used to "stamp" .docx templates
  * to create a .docx document filled with custom data at runtime.
  * </p>
+ * <p>
+ * A DocxStamper can be shared by several threads that stamp documents concurrently, since each stamping run gets its
+ * own comment processors and evaluation context. This does not hold for comment processors that are registered as
+ * instances (see {@link DocxStamperConfiguration#addCommentProcessor(Class, ICommentProcessor)}), these are shared
+ * by all runs. With such processors stampAll() only stamps one document at a time, and concurrent calls to stamp()
+ * are logged as a warning.
+ * </p>
  *
  * @param <T> the class of the context object used to resolve expressions against.
  */
 public class DocxStamper<T> {
 
-  private PlaceholderReplacer<T> placeholderReplacer;
-
-  private CommentProcessorRegistry commentProcessorRegistry;
+  private Logger logger = LoggerFactory.getLogger(DocxStamper.class);
 
   private TypeResolverRegistry typeResolverRegistry;
 
+  private InterfaceMethodResolver expressionFunctions;
+
+  private Map<Class<?>, ICommentProcessorFactory> builtInCommentProcessors;
+
+  private final AtomicInteger runningSessions = new AtomicInteger();
+
+  private final AtomicBoolean sharedProcessorWarningLogged = new AtomicBoolean();
+
   private DocxStamperConfiguration config = new DocxStamperConfiguration();
 
   public DocxStamper() {
@@ -55,26 +98,41 @@ public class DocxStamper<T> {
 
   private void initFields() {
     typeResolverRegistry = new TypeResolverRegistry(new FallbackResolver());
-    typeResolverRegistry.registerTypeResolver(Image.class, new ImageResolver());
-    typeResolverRegistry.registerTypeResolver(Date.class, new DateResolver("dd.MM.yyyy"));
+    typeResolverRegistry.registerTypeResolver(Image.class, new ImageResolver(config.getPreparedImageCache()));
+    TimeZone timeZone = config.getTimeZone() != null ? config.getTimeZone() : TimeZone.getDefault();
+    typeResolverRegistry.registerTypeResolver(Date.class, new DateResolver(config.getDateFormat(), timeZone));
+    if (TemporalResolver.isSupported()) {
+      TemporalResolver temporalResolver = new TemporalResolver(config.getDateFormat());
+      for (Class<?> type : TemporalResolver.findClasses("java.time.LocalDate", "java.time.LocalDateTime",
+              "java.time.ZonedDateTime", "java.time.OffsetDateTime")) {
+        typeResolverRegistry.registerTypeResolver(type, temporalResolver);
+      }
+      for (Class<?> type : TemporalResolver.findClasses("java.time.Instant")) {
+        typeResolverRegistry.registerTypeResolver(type, new TemporalResolver(config.getDateFormat(), timeZone));
+      }
+    }
     for (Map.Entry<Class<?>, ITypeResolver> entry : config.getTypeResolvers().entrySet()) {
       typeResolverRegistry.registerTypeResolver(entry.getKey(), entry.getValue());
     }
 
-    ExpressionResolver expressionResolver = new ExpressionResolver(config.getEvaluationContextConfigurer());
-    placeholderReplacer = new PlaceholderReplacer<>(typeResolverRegistry, config.getLineBreakPlaceholder());
-    placeholderReplacer.setExpressionResolver(expressionResolver);
-
-    commentProcessorRegistry = new CommentProcessorRegistry(placeholderReplacer);
-    commentProcessorRegistry.setExpressionResolver(expressionResolver);
-    commentProcessorRegistry.setFailOnInvalidExpression(config.isFailOnUnresolvedExpression());
-    commentProcessorRegistry.registerCommentProcessor(IRepeatProcessor.class, new RepeatProcessor(typeResolverRegistry));
-    commentProcessorRegistry.registerCommentProcessor(IDisplayIfProcessor.class, new DisplayIfProcessor());
-    commentProcessorRegistry.registerCommentProcessor(IReplaceWithProcessor.class,
-            new ReplaceWithProcessor());
-    for (Map.Entry<Class<?>, ICommentProcessor> entry : config.getCommentProcessors().entrySet()) {
-      commentProcessorRegistry.registerCommentProcessor(entry.getKey(), entry.getValue());
+    expressionFunctions = new InterfaceMethodResolver();
+    for (Map.Entry<Class<?>, Object> entry : config.getExpressionFunctions().entrySet()) {
+      expressionFunctions.addInterface(entry.getKey(), entry.getValue());
     }
+
+    builtInCommentProcessors = new LinkedHashMap<>();
+    builtInCommentProcessors.put(IDisplayIfProcessor.class, new ICommentProcessorFactory() {
+      @Override
+      public ICommentProcessor createCommentProcessor() {
+        return new DisplayIfProcessor();
+      }
+    });
+    builtInCommentProcessors.put(IReplaceWithProcessor.class, new ICommentProcessorFactory() {
+      @Override
+      public ICommentProcessor createCommentProcessor() {
+        return new ReplaceWithProcessor();
+      }
+    });
   }
 
   /**
@@ -132,11 +190,60 @@ public class DocxStamper<T> {
    */
   public void stamp(WordprocessingMLPackage document, T contextRoot, OutputStream out) throws DocxStamperException {
     try {
-      T proxiedRoot = addCustomInterfacesToContextRoot(contextRoot, this.config.getExpressionFunctions());
-      replaceExpressions(document, proxiedRoot);
-      processComments(document, proxiedRoot);
+      // the document is walked once, both phases only visit the sites found in this walk
+      ResolvedSiteTable sites = new SiteCollector(document, config.getLineBreakPlaceholder()).collectResolved();
+      stampInNewSession(document, sites, contextRoot);
+      document.save(out);
+    } catch (DocxStamperException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new DocxStamperException(e);
+    }
+  }
+
+  /**
+   * <p>
+   * Reads in a .docx template and analyzes it once, so that it can be stamped many times with
+   * stamp(CompiledTemplate, T, OutputStream) without having to load and search the template again for each
+   * stamping run.
+   * </p>
+   * <p>
+   * The compiled template depends on the configuration of this DocxStamper and should only be stamped by it.
+   * </p>
+   *
+   * @param template the .docx template.
+   * @return the compiled template.
+   * @throws DocxStamperException in case of an error.
+   */
+  public CompiledTemplate compile(InputStream template) throws DocxStamperException {
+    try {
+      byte[] templateBytes = IOUtils.toByteArray(template);
+      WordprocessingMLPackage document = WordprocessingMLPackage.load(new ByteArrayInputStream(templateBytes));
+      SiteTable sites = new SiteCollector(document, config.getLineBreakPlaceholder()).collect();
+      return new CompiledTemplate(templateBytes, sites);
+    } catch (DocxStamperException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new DocxStamperException(e);
+    }
+  }
+
+  /**
+   * Same as stamp(InputStream, T, OutputStream) except that you pass in a template that was compiled by
+   * compile(InputStream). Only the paragraphs that were found to contain expressions or comments at compile time
+   * are processed.
+   *
+   * @param template    the compiled .docx template.
+   * @param contextRoot the context root object against which all expressions found in the template are evaluated.
+   * @param out         the output stream in which to write the resulting .docx document.
+   * @throws DocxStamperException in case of an error.
+   */
+  public void stamp(CompiledTemplate template, T contextRoot, OutputStream out) throws DocxStamperException {
+    try {
+      WordprocessingMLPackage document = template.createDocument();
+      ResolvedSiteTable sites = template.getSites().resolve(document);
+      stampInNewSession(document, sites, contextRoot);
       document.save(out);
-      commentProcessorRegistry.reset();
     } catch (DocxStamperException e) {
       throw e;
     } catch (Exception e) {
@@ -144,30 +251,264 @@ public class DocxStamper<T> {
     }
   }
 
-  private T addCustomInterfacesToContextRoot(T contextRoot, Map<Class<?>, Object> interfacesToImplementations) {
-    if (interfacesToImplementations.isEmpty()) {
-      return contextRoot;
+  /**
+   * Same as stampAll(CompiledTemplate, Iterable, DocumentSink) except that the template is compiled first.
+   *
+   * @param template the .docx template.
+   * @param contexts the context objects to stamp the template with, one document per context object.
+   * @param sink     provides the output stream for each document.
+   * @throws DocxStamperException in case of an error.
+   */
+  public void stampAll(InputStream template, Iterable<? extends T> contexts, DocumentSink<? super T> sink) throws DocxStamperException {
+    stampAll(compile(template), contexts, sink);
+  }
+
+  /**
+   * Stamps the compiled template once for each of the given context objects, using as many worker threads as there
+   * are processors available (or a virtual thread per document, see
+   * {@link DocxStamperConfiguration#setVirtualThreads(boolean)}). Only a limited number of documents is held in
+   * memory at the same time (see {@link DocxStamperConfiguration#setMaxDocumentsInFlight(int)}), so the context
+   * objects may be produced lazily while the batch is running.
+   *
+   * @param template the compiled .docx template.
+   * @param contexts the context objects to stamp the template with, one document per context object.
+   * @param sink     provides the output stream for each document.
+   * @throws DocxStamperException in case of an error.
+   */
+  public void stampAll(CompiledTemplate template, Iterable<? extends T> contexts, DocumentSink<? super T> sink) throws DocxStamperException {
+    int processors = Runtime.getRuntime().availableProcessors();
+    boolean virtualThreads = config.isVirtualThreads() && ExecutorUtil.isVirtualThreadSupported();
+    if (config.isVirtualThreads() && !virtualThreads) {
+      logger.warn("Virtual threads are not supported by this JVM (Java 21 or later is required). Stamping on platform threads.");
+    }
+    ExecutorService executor = virtualThreads
+            ? ExecutorUtil.newVirtualThreadPerTaskExecutor()
+            : Executors.newFixedThreadPool(processors);
+    int maxInFlight = config.getMaxDocumentsInFlight();
+    if (maxInFlight == 0) {
+      maxInFlight = virtualThreads ? 16 * processors : 2 * processors;
+    }
+    try {
+      stampAll(template, contexts, sink, executor, maxInFlight);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * <p>
+   * Stamps the compiled template once for each of the given context objects. Each document is stamped and written
+   * on the given executor. No more than maxInFlight documents are stamped at the same time: the context objects are
+   * only taken from the given Iterable as fast as the documents are written, and the calling thread waits until one
+   * of the running documents is done before it submits the next one.
+   * </p>
+   * <p>
+   * If a document fails, no further documents are started and the failure is rethrown after the running documents
+   * are done. Documents that were written before are left in place. The same holds if the context objects cannot
+   * be iterated: the exception is rethrown once the running documents are done, so no document is written to the sink
+   * after this method has returned.
+   * </p>
+   *
+   * @param template    the compiled .docx template.
+   * @param contexts    the context objects to stamp the template with, one document per context object.
+   * @param sink        provides the output stream for each document.
+   * @param executor    the executor on which the documents are stamped.
+   * @param maxInFlight the maximum number of documents stamped at the same time.
+   * @throws DocxStamperException in case of an error.
+   */
+  public void stampAll(final CompiledTemplate template, Iterable<? extends T> contexts, final DocumentSink<? super T> sink,
+                       Executor executor, int maxInFlight) throws DocxStamperException {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("maxInFlight must be at least 1!");
     }
+    if (maxInFlight > 1 && config.hasSharedCommentProcessors()) {
+      throw new DocxStamperException("Comment processors registered as instances are shared by all documents and " +
+              "cannot stamp several documents at the same time. Register an ICommentProcessorFactory instead or " +
+              "pass a maxInFlight of 1.");
+    }
+    final Semaphore inFlight = new Semaphore(maxInFlight);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final AtomicBoolean aborted = new AtomicBoolean();
+    boolean submittedAll = false;
+    try {
+      for (final T context : contexts) {
+        inFlight.acquire();
+        if (failure.get() != null) {
+          inFlight.release();
+          break;
+        }
+        try {
+          executor.execute(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                if (!aborted.get() && failure.get() == null) {
+                  try (OutputStream out = sink.openOutputStream(context)) {
+                    stamp(template, context, out);
+                  }
+                }
+              } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+              } finally {
+                inFlight.release();
+              }
+            }
+          });
+        } catch (RuntimeException e) {
+          inFlight.release();
+          throw e;
+        }
+      }
+      submittedAll = true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DocxStamperException("Interrupted while stamping a batch of documents!", e);
+    } finally {
+      if (!submittedAll) {
+        // e.g. the contexts could not be iterated, documents that have not been started yet are skipped
+        aborted.set(true);
+      }
+      // no document may be written to the sink any more once this method returns
+      inFlight.acquireUninterruptibly(maxInFlight);
+    }
+    Throwable e = failure.get();
+    if (e instanceof DocxStamperException) {
+      throw (DocxStamperException) e;
+    } else if (e instanceof Error) {
+      throw (Error) e;
+    } else if (e != null) {
+      throw new DocxStamperException(e);
+    }
+  }
+
+  /**
+   * <p>
+   * Mail merge: stamps the compiled template once for each of the given context objects and writes the results as
+   * consecutive sections into a single .docx document. Each section starts on a new page.
+   * </p>
+   * <p>
+   * The template package is only loaded and saved once. Its body is copied for each context object, while styles,
+   * numbering definitions, headers and footers exist only once and are shared by all sections. Images are added to
+   * the shared package as they are resolved. The drawings, bookmarks and comments copied with the body get new ids in
+   * each section, and numbered lists start anew in each section (unless a paragraph only gets its numbering from its
+   * style).
+   * </p>
+   * <p>
+   * Since all sections share the same headers and footers, the expressions and processor expressions within headers
+   * and footers are only resolved against the first context object.
+   * </p>
+   *
+   * @param template the compiled .docx template.
+   * @param contexts the context objects to stamp the template with, one section per context object.
+   * @param out      the output stream in which to write the merged .docx document.
+   * @throws DocxStamperException in case of an error.
+   */
+  public void stampMerged(CompiledTemplate template, Iterable<? extends T> contexts, OutputStream out) throws DocxStamperException {
     try {
-      ProxyBuilder<T> proxyBuilder = new ProxyBuilder<T>()
-              .withRoot(contextRoot);
-      for (Map.Entry<Class<?>, Object> entry : interfacesToImplementations.entrySet()) {
-        Class<?> interfaceClass = entry.getKey();
-        Object implementation = entry.getValue();
-        proxyBuilder.withInterface(interfaceClass, implementation);
+      WordprocessingMLPackage document = template.createDocument();
+      MainDocumentPart mainDocumentPart = document.getMainDocumentPart();
+      List<Object> templateBody = new ArrayList<>(mainDocumentPart.getContent());
+      SectPr sectPr = mainDocumentPart.getContents().getBody().getSectPr();
+      List<Object> mergedBody = new ArrayList<>();
+      boolean first = true;
+      for (T context : contexts) {
+        if (!first) {
+          mergedBody.add(createSectionBreak(sectPr));
+          // the section properties of the body belong to the last section
+          startOnNewPage(sectPr);
+        }
+        mainDocumentPart.getContent().clear();
+        for (Object block : templateBody) {
+          mainDocumentPart.getContent().add(copyBlock(block));
+        }
+        if (!first) {
+          prepareCopiedSection(document);
+        }
+        ResolvedSiteTable sites = first
+                ? template.getSites().resolve(document)
+                : template.getSites().resolve(document, mainDocumentPart.getPartName());
+        stampInNewSession(document, sites, context);
+        mergedBody.addAll(mainDocumentPart.getContent());
+        first = false;
       }
-      return proxyBuilder.build();
-    } catch (ProxyException e) {
-      throw new DocxStamperException("could create proxy around context root!", e);
+      mainDocumentPart.getContent().clear();
+      mainDocumentPart.getContent().addAll(mergedBody);
+      document.save(out);
+    } catch (DocxStamperException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new DocxStamperException(e);
     }
   }
 
-  private void replaceExpressions(WordprocessingMLPackage document, T contextRoot) {
-    placeholderReplacer.resolveExpressions(document, contextRoot);
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private Object copyBlock(Object block) {
+    if (block instanceof JAXBElement) {
+      // XmlUtils.deepCopy() does not copy the value of a JAXBElement (e.g. a table) reliably
+      JAXBElement element = (JAXBElement) block;
+      return new JAXBElement(element.getName(), element.getDeclaredType(), element.getScope(),
+              XmlUtils.deepCopy(element.getValue()));
+    }
+    return XmlUtils.deepCopy(block);
+  }
+
+  /**
+   * Gives the drawings, bookmarks and comments of a copy of the template body new ids and lets its lists start anew.
+   * The first section keeps the ids and numbering of the template.
+   */
+  private void prepareCopiedSection(WordprocessingMLPackage document) throws Docx4JException {
+    AnnotationIdAllocator.forDocument(document).reassignIds(document.getMainDocumentPart());
+    final DrawingIdAllocator drawingIds = DrawingIdAllocator.forDocument(document);
+    new BaseDocumentWalker(document.getMainDocumentPart()) {
+      @Override
+      protected void onParagraph(P paragraph) {
+        drawingIds.reassignIds(paragraph);
+      }
+    }.walk();
+    NumberingUtil.restartNumbering(document, document.getMainDocumentPart());
+  }
+
+  /**
+   * Creates a paragraph that ends a section with the same properties as the last section of the template.
+   */
+  private P createSectionBreak(SectPr sectPr) {
+    ObjectFactory factory = Context.getWmlObjectFactory();
+    SectPr sectionBreak = sectPr != null ? XmlUtils.deepCopy(sectPr) : factory.createSectPr();
+    startOnNewPage(sectionBreak);
+    PPr paragraphProperties = factory.createPPr();
+    paragraphProperties.setSectPr(sectionBreak);
+    P paragraph = factory.createP();
+    paragraph.setPPr(paragraphProperties);
+    return paragraph;
+  }
+  /**
+   * Makes the section with the given properties start on a new page, the template may have its section start on the
+   * same page ("continuous") or on the next odd or even page.
+   */
+  private void startOnNewPage(SectPr sectPr) {
+    if (sectPr == null) {
+      // a section without properties starts on a new page
+      return;
+    }
+    SectPr.Type type = Context.getWmlObjectFactory().createSectPrType();
+    type.setVal("nextPage");
+    sectPr.setType(type);
   }
 
-  private void processComments(final WordprocessingMLPackage document, final T contextRoot) {
-    commentProcessorRegistry.runProcessors(document, contextRoot);
+
+  private void stampInNewSession(WordprocessingMLPackage document, ResolvedSiteTable sites, T contextRoot) {
+    StampingSession<T> session = new StampingSession<>(config, typeResolverRegistry, expressionFunctions,
+            builtInCommentProcessors);
+    int running = runningSessions.incrementAndGet();
+    try {
+      if (running > 1 && config.hasSharedCommentProcessors() && sharedProcessorWarningLogged.compareAndSet(false, true)) {
+        logger.warn("Several documents are stamped at the same time, but some comment processors were registered as " +
+                "instances and are shared by all documents. Register an ICommentProcessorFactory instead.");
+      }
+      session.stamp(document, sites, contextRoot);
+    } finally {
+      runningSessions.decrementAndGet();
+    }
   }
 
 }
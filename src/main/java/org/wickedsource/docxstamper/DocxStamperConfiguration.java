@@ -1,13 +1,21 @@
 package org.wickedsource.docxstamper;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
 
+import org.springframework.expression.spel.SpelCompilerMode;
 import org.wickedsource.docxstamper.api.EvaluationContextConfigurer;
 import org.wickedsource.docxstamper.api.commentprocessor.ICommentProcessor;
+import org.wickedsource.docxstamper.api.commentprocessor.ICommentProcessorFactory;
 import org.wickedsource.docxstamper.api.typeresolver.ITypeResolver;
+import org.wickedsource.docxstamper.el.ExpressionCache;
 import org.wickedsource.docxstamper.el.NoOpEvaluationContextConfigurer;
+import org.wickedsource.docxstamper.replace.typeresolver.DateResolver;
 import org.wickedsource.docxstamper.replace.typeresolver.FallbackResolver;
+import org.wickedsource.docxstamper.replace.typeresolver.image.PreparedImageCache;
 
 /**
  * Provides configuration parameters for DocxStamper.
@@ -20,14 +28,32 @@ public class DocxStamperConfiguration {
 
   private boolean failOnUnresolvedExpression = true;
 
-  private Map<Class<?>, ICommentProcessor> commentProcessors = new HashMap<>();
+  private Map<Class<?>, ICommentProcessorFactory> commentProcessors = new LinkedHashMap<>();
 
   private Map<Class<?>, ITypeResolver> typeResolvers = new HashMap<>();
 
   private ITypeResolver defaultTypeResolver = new FallbackResolver();
 
+  private String dateFormat = "dd.MM.yyyy";
+
+  private TimeZone timeZone;
+
   private Map<Class<?>, Object> expressionFunctions = new HashMap<>();
 
+  private ExpressionCache expressionCache = new ExpressionCache();
+
+  private PreparedImageCache preparedImageCache = new PreparedImageCache();
+
+  private SpelCompilerMode spelCompilerMode = SpelCompilerMode.OFF;
+
+  private Executor parallelExecutor;
+
+  private int parallelChunkSize;
+
+  private boolean virtualThreads;
+
+  private int maxDocumentsInFlight;
+
   /**
    * The String provided as lineBreakPlaceholder will be replaces with a line break
    * when stamping a document. If no lineBreakPlaceholder is provided, no replacement
@@ -63,14 +89,29 @@ public class DocxStamperConfiguration {
 
   /**
    * Registers the specified ICommentProcessor as an implementation of the
-   * specified interface.
+   * specified interface. The same instance is used by all stamping runs, so a DocxStamper with
+   * comment processors registered this way must not stamp several documents concurrently: stampAll() refuses to
+   * stamp more than one document at a time and concurrent calls to stamp() are logged as a warning. Register an
+   * {@link ICommentProcessorFactory} instead to stamp documents concurrently.
    *
    * @param interfaceClass   the Interface which is implemented by the commentProcessor.
    * @param commentProcessor the commentProcessor implementing the specified interface.
    */
   public DocxStamperConfiguration addCommentProcessor(Class<?> interfaceClass,
-                                                      ICommentProcessor commentProcessor) {
-    this.commentProcessors.put(interfaceClass, commentProcessor);
+                                                      final ICommentProcessor commentProcessor) {
+    return addCommentProcessor(interfaceClass, new SharedCommentProcessorFactory(commentProcessor));
+  }
+
+  /**
+   * Registers the ICommentProcessors created by the specified factory as implementations of the
+   * specified interface. Each stamping run uses a new ICommentProcessor created by the factory.
+   *
+   * @param interfaceClass          the Interface which is implemented by the created commentProcessors.
+   * @param commentProcessorFactory the factory creating commentProcessors implementing the specified interface.
+   */
+  public DocxStamperConfiguration addCommentProcessor(Class<?> interfaceClass,
+                                                      ICommentProcessorFactory commentProcessorFactory) {
+    this.commentProcessors.put(interfaceClass, commentProcessorFactory);
     return this;
   }
 
@@ -104,6 +145,137 @@ public class DocxStamperConfiguration {
     return this;
   }
 
+  /**
+   * Sets the cache in which parsed expressions are kept. By default, each configuration has its own cache holding up
+   * to {@link ExpressionCache#DEFAULT_MAXIMUM_SIZE} expressions. Pass the same cache into several configurations to
+   * share parsed expressions between DocxStamper instances, or pass a cache with maximum size 0 to disable caching.
+   * The cache also provides hit and miss counters to help sizing it.
+   *
+   * @param expressionCache the cache to use.
+   */
+  public DocxStamperConfiguration setExpressionCache(ExpressionCache expressionCache) {
+    this.expressionCache = expressionCache;
+    return this;
+  }
+
+  /**
+   * Sets the cache in which images are kept after they have been probed for their format and dimensions. By default,
+   * each configuration has its own cache holding up to {@link PreparedImageCache#DEFAULT_MAXIMUM_SIZE} images. Pass
+   * the same cache into several configurations to share prepared images between DocxStamper instances, or pass a
+   * cache with maximum size 0 to disable caching.
+   *
+   * @param preparedImageCache the cache to use.
+   */
+  public DocxStamperConfiguration setPreparedImageCache(PreparedImageCache preparedImageCache) {
+    this.preparedImageCache = preparedImageCache;
+    return this;
+  }
+
+  /**
+   * Sets the format in which expressions resolving to dates are put into the document. The format applies to
+   * java.util.Date and, on Java 8 or later, to LocalDate, LocalDateTime, ZonedDateTime, OffsetDateTime and Instant
+   * (java.util.Date and Instant are formatted in the time zone set with {@link #setTimeZone(TimeZone)}). Defaults to
+   * "dd.MM.yyyy". A type resolver added with addTypeResolver() for one of these types takes precedence.
+   *
+   * @param dateFormat a pattern understood in the same way by java.text.SimpleDateFormat and
+   *                   java.time.format.DateTimeFormatter.
+   * @return the configuration object for chaining.
+   * @throws IllegalArgumentException if the pattern is invalid or the two formatters would interpret it differently
+   *                                  (see {@link DateResolver#checkFormatString(String)}).
+   */
+  public DocxStamperConfiguration setDateFormat(String dateFormat) {
+    DateResolver.checkFormatString(dateFormat);
+    this.dateFormat = dateFormat;
+    return this;
+  }
+
+  /**
+   * Sets the time zone in which expressions resolving to a java.util.Date or an Instant are formatted. Defaults to
+   * the default time zone of the JVM at the time the DocxStamper is created.
+   *
+   * @param timeZone the time zone to format dates in.
+   * @return the configuration object for chaining.
+   */
+  public DocxStamperConfiguration setTimeZone(TimeZone timeZone) {
+    this.timeZone = timeZone;
+    return this;
+  }
+
+  /**
+   * Sets the mode in which the Spring expression language compiles expressions in the template and in comments to
+   * bytecode. By default, expressions are only interpreted ({@link SpelCompilerMode#OFF}).
+   * {@link SpelCompilerMode#IMMEDIATE} and {@link SpelCompilerMode#MIXED} speed up expressions that are evaluated
+   * very often. If a compiled expression fails (for example because it is evaluated against another type of context
+   * root than it was compiled for), that evaluation falls back to interpreted mode, while the expression stays compiled
+   * for later evaluations. Note that in this case the parts of the expression the compiled code evaluated before it
+   * failed are evaluated again, so getters with side effects may be called twice. DocxStamper instances sharing an
+   * {@link ExpressionCache} should use the same compiler mode.
+   *
+   * @param spelCompilerMode the compiler mode to use.
+   */
+  public DocxStamperConfiguration setSpelCompilerMode(SpelCompilerMode spelCompilerMode) {
+    this.spelCompilerMode = spelCompilerMode;
+    return this;
+  }
+
+  /**
+   * Sets an executor on which the expressions in the different parts of a document (headers, main document,
+   * footers) are resolved concurrently. By default (null), the parts are processed one after the other on the
+   * calling thread. When an executor is set, the context root, the expression functions and all registered type
+   * resolvers must be safe to be called from several threads at once.
+   *
+   * @param parallelExecutor the executor to use, or null to stamp on the calling thread only.
+   */
+  public DocxStamperConfiguration setParallelExecutor(Executor parallelExecutor) {
+    this.parallelExecutor = parallelExecutor;
+    return this;
+  }
+
+  /**
+   * Splits the main document into chunks that are resolved concurrently on the executor set with
+   * setParallelExecutor(Executor), e.g. a {@link java.util.concurrent.ForkJoinPool}. Each chunk consists of
+   * consecutive top-level paragraphs and tables containing at least the given number of paragraphs with expressions.
+   * By default (0), the main document is resolved as a single task. Has no effect without a parallel executor.
+   *
+   * @param parallelChunkSize the minimum number of paragraphs with expressions per chunk, or 0 not to split the main
+   *                          document.
+   */
+  public DocxStamperConfiguration setParallelChunkSize(int parallelChunkSize) {
+    if (parallelChunkSize < 0) {
+      throw new IllegalArgumentException("parallelChunkSize must not be negative!");
+    }
+    this.parallelChunkSize = parallelChunkSize;
+    return this;
+  }
+
+  /**
+   * If set to true, DocxStamper.stampAll() stamps each document on its own virtual thread instead of on a pool of
+   * platform threads. This pays off if the context objects block on I/O, e.g. when they load data lazily. Virtual
+   * threads require Java 21 or later; on older JVMs a warning is logged and platform threads are used. Is set to
+   * false by default.
+   *
+   * @param virtualThreads true to stamp batches on virtual threads.
+   */
+  public DocxStamperConfiguration setVirtualThreads(boolean virtualThreads) {
+    this.virtualThreads = virtualThreads;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of documents DocxStamper.stampAll() stamps at the same time. By default (0), this is
+   * twice the number of available processors when stamping on platform threads and 16 times the number of available
+   * processors when stamping on virtual threads.
+   *
+   * @param maxDocumentsInFlight the maximum number of documents stamped at the same time, or 0 for the default.
+   */
+  public DocxStamperConfiguration setMaxDocumentsInFlight(int maxDocumentsInFlight) {
+    if (maxDocumentsInFlight < 0) {
+      throw new IllegalArgumentException("maxDocumentsInFlight must not be negative!");
+    }
+    this.maxDocumentsInFlight = maxDocumentsInFlight;
+    return this;
+  }
+
   /**
    * Creates a {@link DocxStamper} instance configured with this configuration.
    */
@@ -119,14 +291,35 @@ public class DocxStamperConfiguration {
     return failOnUnresolvedExpression;
   }
 
-  Map<Class<?>, ICommentProcessor> getCommentProcessors() {
+  Map<Class<?>, ICommentProcessorFactory> getCommentProcessors() {
     return commentProcessors;
   }
 
+  /**
+   * @return true if any comment processor was registered as an instance rather than a factory, so that it is
+   * shared by all stamping runs.
+   */
+  boolean hasSharedCommentProcessors() {
+    for (ICommentProcessorFactory factory : commentProcessors.values()) {
+      if (factory instanceof SharedCommentProcessorFactory) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   Map<Class<?>, ITypeResolver> getTypeResolvers() {
     return typeResolvers;
   }
 
+  String getDateFormat() {
+    return dateFormat;
+  }
+
+  TimeZone getTimeZone() {
+    return timeZone;
+  }
+
   ITypeResolver getDefaultTypeResolver() {
     return defaultTypeResolver;
   }
@@ -136,6 +329,34 @@ public class DocxStamperConfiguration {
     return this;
   }
 
+  ExpressionCache getExpressionCache() {
+    return expressionCache;
+  }
+
+  PreparedImageCache getPreparedImageCache() {
+    return preparedImageCache;
+  }
+
+  SpelCompilerMode getSpelCompilerMode() {
+    return spelCompilerMode;
+  }
+
+  Executor getParallelExecutor() {
+    return parallelExecutor;
+  }
+
+  int getParallelChunkSize() {
+    return parallelChunkSize;
+  }
+
+  boolean isVirtualThreads() {
+    return virtualThreads;
+  }
+
+  int getMaxDocumentsInFlight() {
+    return maxDocumentsInFlight;
+  }
+
   String getLineBreakPlaceholder() {
     return lineBreakPlaceholder;
   }
@@ -143,4 +364,21 @@ public class DocxStamperConfiguration {
   public Map<Class<?>, Object> getExpressionFunctions() {
     return expressionFunctions;
   }
+
+  /**
+   * Hands out the same comment processor to every stamping run.
+   */
+  private static class SharedCommentProcessorFactory implements ICommentProcessorFactory {
+
+    private final ICommentProcessor commentProcessor;
+
+    SharedCommentProcessorFactory(ICommentProcessor commentProcessor) {
+      this.commentProcessor = commentProcessor;
+    }
+
+    @Override
+    public ICommentProcessor createCommentProcessor() {
+      return commentProcessor;
+    }
+  }
 }
@@ -0,0 +1,82 @@
+package org.wickedsource.docxstamper;
+
+import java.util.Map;
+
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.wickedsource.docxstamper.api.commentprocessor.ICommentProcessorFactory;
+import org.wickedsource.docxstamper.api.typeresolver.TypeResolverRegistry;
+import org.wickedsource.docxstamper.el.ExpressionResolver;
+import org.wickedsource.docxstamper.el.InterfaceMethodResolver;
+import org.wickedsource.docxstamper.processor.CommentProcessorRegistry;
+import org.wickedsource.docxstamper.processor.repeat.IRepeatProcessor;
+import org.wickedsource.docxstamper.processor.repeat.RepeatProcessor;
+import org.wickedsource.docxstamper.replace.PlaceholderReplacer;
+import org.wickedsource.docxstamper.template.ResolvedSiteTable;
+import org.wickedsource.docxstamper.util.DrawingIdAllocator;
+
+/**
+ * Holds everything that collects state while a single document is stamped: the evaluation context (within the
+ * ExpressionResolver), the comment processors and their registry. A DocxStamper creates a new session for each
+ * stamping run, so that it can stamp several documents concurrently. Whatever does not change between runs (type
+ * resolvers, expression functions, parsed expressions) is shared between the sessions.
+ *
+ * @param <T> the class of the context object used to resolve expressions against.
+ */
+class StampingSession<T> {
+
+  private final PlaceholderReplacer<T> placeholderReplacer;
+
+  private final CommentProcessorRegistry commentProcessorRegistry;
+
+  StampingSession(DocxStamperConfiguration config, TypeResolverRegistry typeResolverRegistry,
+                  InterfaceMethodResolver expressionFunctions,
+                  Map<Class<?>, ICommentProcessorFactory> builtInCommentProcessors) {
+    // placeholders only see the expression functions, the methods of the comment processors are only exposed to
+    // the expressions within comments (and #{} expressions)
+    placeholderReplacer = new PlaceholderReplacer<>(typeResolverRegistry, config.getLineBreakPlaceholder());
+    placeholderReplacer.setExpressionResolver(newExpressionResolver(config, expressionFunctions));
+    placeholderReplacer.setExecutor(config.getParallelExecutor());
+    placeholderReplacer.setChunkSize(config.getParallelChunkSize());
+
+    commentProcessorRegistry = new CommentProcessorRegistry(placeholderReplacer);
+    commentProcessorRegistry.setExpressionResolver(newExpressionResolver(config, expressionFunctions));
+    commentProcessorRegistry.setFailOnInvalidExpression(config.isFailOnUnresolvedExpression());
+    // repeated rows are resolved like the rest of the document: same expression cache, compiler mode and
+    // evaluation context configuration
+    commentProcessorRegistry.registerCommentProcessor(IRepeatProcessor.class, new RepeatProcessor(placeholderReplacer));
+    registerCommentProcessors(builtInCommentProcessors);
+    registerCommentProcessors(config.getCommentProcessors());
+  }
+
+  private void registerCommentProcessors(Map<Class<?>, ICommentProcessorFactory> factories) {
+    for (Map.Entry<Class<?>, ICommentProcessorFactory> entry : factories.entrySet()) {
+      commentProcessorRegistry.registerCommentProcessor(entry.getKey(), entry.getValue().createCommentProcessor());
+    }
+  }
+
+  private static ExpressionResolver newExpressionResolver(DocxStamperConfiguration config,
+                                                         InterfaceMethodResolver expressionFunctions) {
+    ExpressionResolver expressionResolver = new ExpressionResolver(config.getEvaluationContextConfigurer(),
+            config.getExpressionCache(), config.getSpelCompilerMode());
+    if (!expressionFunctions.isEmpty()) {
+      expressionResolver.addMethodResolver(expressionFunctions);
+    }
+    return expressionResolver;
+  }
+
+  /**
+   * Replaces the expressions in the given sites of the document and runs the comment processors on them.
+   */
+  void stamp(WordprocessingMLPackage document, ResolvedSiteTable sites, T contextRoot) {
+    try {
+      // ids of added drawings continue after those of the template, the image resolver takes them from the
+      // allocator attached to the document
+      DrawingIdAllocator.seed(document, sites.getMaxDrawingId());
+      placeholderReplacer.resolveExpressions(document, contextRoot, sites);
+      commentProcessorRegistry.runProcessors(document, contextRoot, sites);
+    } finally {
+      // comment processors registered as instances are reused by later sessions
+      commentProcessorRegistry.reset();
+    }
+  }
+}
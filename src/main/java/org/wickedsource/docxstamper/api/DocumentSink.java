@@ -0,0 +1,25 @@
+package org.wickedsource.docxstamper.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Provides the OutputStreams into which the documents of a batch stamping run are written (see
+ * DocxStamper.stampAll()).
+ *
+ * @param <T> the class of the context objects the documents are stamped with.
+ */
+public interface DocumentSink<T> {
+
+    /**
+     * Opens the stream into which to write the document stamped with the given context object. The stream is
+     * closed by DocxStamper as soon as the document has been written. This method may be called from several threads
+     * at once.
+     *
+     * @param contextRoot the context object the document is stamped with.
+     * @return the stream to write the document to.
+     * @throws IOException if the stream cannot be opened.
+     */
+    OutputStream openOutputStream(T contextRoot) throws IOException;
+
+}
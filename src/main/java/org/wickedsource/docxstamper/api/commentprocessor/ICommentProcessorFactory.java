@@ -0,0 +1,15 @@
+package org.wickedsource.docxstamper.api.commentprocessor;
+
+/**
+ * Creates the ICommentProcessor a DocxStamper uses for a single stamping run. Since each run gets its own
+ * instance, the comment processor may collect state during the run, and the DocxStamper may stamp several documents
+ * concurrently.
+ */
+public interface ICommentProcessorFactory {
+
+    /**
+     * @return a new ICommentProcessor instance for one stamping run.
+     */
+    ICommentProcessor createCommentProcessor();
+
+}
@@ -1,16 +1,26 @@
 package org.wickedsource.docxstamper.api.typeresolver;
 
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Registry for all implementations of ITypeResolver that are used by DocxStamper.
+ * Registry for all implementations of ITypeResolver that are used by DocxStamper. A resolver registered for a class
+ * or interface is also used for all its subclasses and implementations (like java.sql.Timestamp for java.util.Date or
+ * proxies of entity classes), unless a more specific resolver is registered. The resolver found for a class is
+ * cached, so looking it up again needs no locking.
  */
 public class TypeResolverRegistry {
 
-    private ITypeResolver defaultResolver;
+    private volatile ITypeResolver defaultResolver;
 
-    private Map<Class<?>, ITypeResolver> typeResolversByType = new HashMap<>();
+    private final Map<Class<?>, ITypeResolver> typeResolversByType = new ConcurrentHashMap<>();
+
+    private volatile ClassValue<ITypeResolver> resolverCache = newResolverCache();
 
     public TypeResolverRegistry(ITypeResolver defaultResolver) {
         this.defaultResolver = defaultResolver;
@@ -18,18 +28,21 @@ public class TypeResolverRegistry {
 
     public <T> void registerTypeResolver(Class<T> resolvedType, ITypeResolver resolver) {
         typeResolversByType.put(resolvedType, resolver);
+        // the cached resolvers of subclasses may change
+        resolverCache = newResolverCache();
     }
 
     /**
-     * Gets the ITypeResolver that was registered for the specified type.
+     * Gets the ITypeResolver that was registered for the specified type or the closest of its supertypes. Superclasses
+     * take precedence over interfaces, and closer supertypes over more distant ones.
      *
      * @param type the class for which to find the ITypeResolver.
      * @param <T>  the type resolved by the ITypeResolver.
-     * @return the ITypeResolver implementation that was earlier registered for the given class, or the default ITypeResolver
-     * if none is found.
+     * @return the ITypeResolver implementation that was earlier registered for the given class or one of its
+     * supertypes, or the default ITypeResolver if none is found.
      */
     public <T> ITypeResolver getResolverForType(Class<T> type) {
-        ITypeResolver resolver = typeResolversByType.get(type);
+        ITypeResolver resolver = resolverCache.get(type);
         if (resolver == null) {
             return defaultResolver;
         } else {
@@ -45,4 +58,39 @@ public class TypeResolverRegistry {
     public void setDefaultResolver(ITypeResolver defaultResolver) {
         this.defaultResolver = defaultResolver;
     }
+
+    private ClassValue<ITypeResolver> newResolverCache() {
+        return new ClassValue<ITypeResolver>() {
+            @Override
+            protected ITypeResolver computeValue(Class<?> type) {
+                return findResolver(type);
+            }
+        };
+    }
+
+    private ITypeResolver findResolver(Class<?> type) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            ITypeResolver resolver = typeResolversByType.get(c);
+            if (resolver != null) {
+                return resolver;
+            }
+        }
+        // interfaces breadth first, so that interfaces declared closer to the type win
+        Deque<Class<?>> interfaces = new ArrayDeque<>();
+        Set<Class<?>> visited = new HashSet<>();
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            Collections.addAll(interfaces, c.getInterfaces());
+        }
+        while (!interfaces.isEmpty()) {
+            Class<?> anInterface = interfaces.removeFirst();
+            if (visited.add(anInterface)) {
+                ITypeResolver resolver = typeResolversByType.get(anInterface);
+                if (resolver != null) {
+                    return resolver;
+                }
+                Collections.addAll(interfaces, anInterface.getInterfaces());
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,133 @@
+package org.wickedsource.docxstamper.el;
+
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.wickedsource.docxstamper.util.BoundedCache;
+
+/**
+ * <p>
+ * Bounded cache of parsed SpEL expressions, keyed by the parser and the expression string. The cache may be shared
+ * between any number of DocxStamper instances and threads, so each distinct expression only has to be parsed once
+ * per parser.
+ * </p>
+ * <p>
+ * Expressions parsed by different parsers are kept apart, since a parser configured for another SpelCompilerMode
+ * yields expressions that are evaluated differently. Parsers are told apart by identity, so a cache only pays off
+ * for callers that reuse their parser (ExpressionResolver uses one parser per SpelCompilerMode).
+ * </p>
+ * <p>
+ * Lookups are lock-free. When the cache grows beyond its maximum size, the least recently used quarter of the
+ * entries is evicted (see {@link BoundedCache}). A maximum size of 0 disables caching.
+ * </p>
+ */
+public class ExpressionCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+
+    private final BoundedCache<Key, Expression> expressions;
+
+    public ExpressionCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param maximumSize the maximum number of parsed expressions to keep. 0 disables caching.
+     */
+    public ExpressionCache(int maximumSize) {
+        this.expressions = new BoundedCache<>(maximumSize);
+    }
+
+    /**
+     * Returns the parsed expression for the given expression string, parsing it with the given parser if it has not
+     * been cached for this parser yet.
+     *
+     * @param expressionString the expression to parse (without leading "${" or "#{" and trailing "}").
+     * @param parser           the parser to parse the expression with.
+     * @return the parsed expression.
+     */
+    public Expression get(String expressionString, ExpressionParser parser) {
+        Expression expression = expressions.get(new Key(parser, expressionString));
+        if (expression == null) {
+            expression = parser.parseExpression(expressionString);
+            put(expressionString, parser, expression);
+        }
+        return expression;
+    }
+
+    /**
+     * Puts the given parsed expression into the cache, replacing any expression cached for the same parser and
+     * expression string.
+     *
+     * @param expressionString the expression string (without leading "${" or "#{" and trailing "}").
+     * @param parser           the parser the expression has been parsed with.
+     * @param expression       the parsed expression.
+     */
+    public void put(String expressionString, ExpressionParser parser, Expression expression) {
+        expressions.put(new Key(parser, expressionString), expression);
+    }
+
+    /**
+     * Removes all cached expressions. The hit and miss counters are not reset.
+     */
+    public void clear() {
+        expressions.clear();
+    }
+
+    /**
+     * @return the number of expressions currently cached.
+     */
+    public int size() {
+        return expressions.size();
+    }
+
+    public int getMaximumSize() {
+        return expressions.getMaximumSize();
+    }
+
+    /**
+     * @return the number of lookups that were answered from the cache.
+     */
+    public long getHitCount() {
+        return expressions.getHitCount();
+    }
+
+    /**
+     * @return the number of lookups that required the expression to be parsed.
+     */
+    public long getMissCount() {
+        return expressions.getMissCount();
+    }
+
+    /**
+     * @return the number of expressions that have been evicted because the cache was full.
+     */
+    public long getEvictionCount() {
+        return expressions.getEvictionCount();
+    }
+
+    private static class Key {
+
+        private final ExpressionParser parser;
+
+        private final String expressionString;
+
+        private Key(ExpressionParser parser, String expressionString) {
+            this.parser = parser;
+            this.expressionString = expressionString;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return parser == other.parser && expressionString.equals(other.expressionString);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(parser) + expressionString.hashCode();
+        }
+    }
+}
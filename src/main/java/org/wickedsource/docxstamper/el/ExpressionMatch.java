@@ -0,0 +1,62 @@
+package org.wickedsource.docxstamper.el;
+
+/**
+ * Position of an expression ("${...}" or "#{...}") within a text, as found by
+ * {@link ExpressionUtil#findExpressions(String)}.
+ */
+public class ExpressionMatch {
+
+    private final int start;
+
+    private final int end;
+
+    private final boolean processorExpression;
+
+    public ExpressionMatch(int start, int end, boolean processorExpression) {
+        this.start = start;
+        this.end = end;
+        this.processorExpression = processorExpression;
+    }
+
+    /**
+     * @return the index of the leading "$" or "#" within the text.
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @return the index after the trailing "}" within the text.
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * @return true if this is a processor expression ("#{...}"), false if it is a variable expression ("${...}").
+     */
+    public boolean isProcessorExpression() {
+        return processorExpression;
+    }
+
+    /**
+     * @param text the text this match was found in.
+     * @return the expression including the leading "${" or "#{" and the trailing "}".
+     */
+    public String getExpression(String text) {
+        return text.substring(start, end);
+    }
+
+    /**
+     * @param text the text this match was found in.
+     * @return the expression without the leading "${" or "#{" and the trailing "}".
+     */
+    public String getStrippedExpression(String text) {
+        return text.substring(start + 2, end - 1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[%d, %d)", processorExpression ? "#{}" : "${}", start, end);
+    }
+}
@@ -1,28 +1,109 @@
 package org.wickedsource.docxstamper.el;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.MethodResolver;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.expression.spel.SpelMessage;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.wickedsource.docxstamper.api.EvaluationContextConfigurer;
 
+/**
+ * <p>
+ * Evaluates the expressions of a template against a context object.
+ * </p>
+ * <p>
+ * The evaluation context is created once and owned by this resolver. Since SpEL MethodResolvers only see the
+ * evaluation context, its root object is switched to the context object of each call. An ExpressionResolver therefore
+ * belongs to a single stamping run: DocxStamper creates a new one for each stamped document (see StampingSession).
+ * It may be called from several threads at once only as long as all calls use the same context object, like the
+ * parts of one document resolved in parallel.
+ * </p>
+ */
 public class ExpressionResolver {
 
     private static final ExpressionUtil expressionUtil = new ExpressionUtil();
 
+    private static final ExpressionParser interpretingParser = new SpelExpressionParser();
+
+    /**
+     * One parser per SpelCompilerMode, so that resolvers of the same mode share their entries in the ExpressionCache
+     * (which keeps the expressions of each parser apart).
+     */
+    private static final Map<SpelCompilerMode, ExpressionParser> parsers = new EnumMap<>(SpelCompilerMode.class);
+
+    static {
+        for (SpelCompilerMode compilerMode : SpelCompilerMode.values()) {
+            parsers.put(compilerMode, compilerMode == SpelCompilerMode.OFF
+                    ? interpretingParser
+                    : new SpelExpressionParser(new SpelParserConfiguration(compilerMode, null)));
+        }
+    }
+
+    private Logger logger = LoggerFactory.getLogger(ExpressionResolver.class);
+
+    private final ExpressionParser parser;
+
     private final EvaluationContextConfigurer evaluationContextConfigurer;
 
+    private final ExpressionCache expressionCache;
+
     private final Map<String, Object> variables = new HashMap<>();
 
+    private final List<MethodResolver> methodResolvers = new ArrayList<>();
+
+    private final ConcurrentMap<String, Expression> interpretedExpressions = new ConcurrentHashMap<>();
+
+    private volatile StandardEvaluationContext evaluationContext;
+
     public ExpressionResolver() {
-        this.evaluationContextConfigurer = new NoOpEvaluationContextConfigurer();
+        this(new NoOpEvaluationContextConfigurer());
     }
 
     public ExpressionResolver(EvaluationContextConfigurer evaluationContextConfigurer) {
+        this(evaluationContextConfigurer, new ExpressionCache());
+    }
+
+    /**
+     * @param evaluationContextConfigurer the configurer to customize the evaluation context with.
+     * @param expressionCache             the cache in which to keep parsed expressions. May be shared with other
+     *                                    ExpressionResolvers.
+     */
+    public ExpressionResolver(EvaluationContextConfigurer evaluationContextConfigurer, ExpressionCache expressionCache) {
+        this(evaluationContextConfigurer, expressionCache, SpelCompilerMode.OFF);
+    }
+
+    /**
+     * @param evaluationContextConfigurer the configurer to customize the evaluation context with.
+     * @param expressionCache             the cache in which to keep parsed expressions. May be shared with other
+     *                                    ExpressionResolvers.
+     * @param compilerMode                the mode in which SpEL compiles expressions to bytecode.
+     */
+    public ExpressionResolver(EvaluationContextConfigurer evaluationContextConfigurer, ExpressionCache expressionCache,
+                              SpelCompilerMode compilerMode) {
         this.evaluationContextConfigurer = evaluationContextConfigurer;
+        this.expressionCache = expressionCache;
+        this.parser = getParser(compilerMode);
+    }
+
+    /**
+     * @return the parser that all ExpressionResolvers of the given mode parse expressions with.
+     */
+    static ExpressionParser getParser(SpelCompilerMode compilerMode) {
+        return parsers.get(compilerMode);
     }
 
     /**
@@ -32,6 +113,9 @@ public class ExpressionResolver {
      */
     public void addVariable(String name, Object value) {
     	variables.put(name, value);
+    	if (evaluationContext != null) {
+    		evaluationContext.setVariable(name, value);
+    	}
     }
 
     /**
@@ -41,10 +125,28 @@ public class ExpressionResolver {
      */
     public void removeVariable(String name) {
     	variables.remove(name);
+    	if (evaluationContext != null) {
+    		evaluationContext.setVariable(name, null);
+    	}
+    }
+
+    /**
+     * Adds a MethodResolver to the evaluation context, after it has been customized by the EvaluationContextConfigurer.
+     * The MethodResolver takes precedence over SpEL's default method resolution.
+     *
+     * @param methodResolver the MethodResolver to add.
+     */
+    public void addMethodResolver(MethodResolver methodResolver) {
+        methodResolvers.add(methodResolver);
+        if (evaluationContext != null) {
+            evaluationContext.addMethodResolver(methodResolver);
+        }
     }
 
     /**
      * Runs the given expression against the given context object and returns the result of the evaluated expression.
+     * The evaluation context is only created and configured for the first expression after construction and then
+     * reused for all following expressions, whatever context object they are evaluated against.
      *
      * @param expressionString the expression to evaluate.
      * @param contextRoot      the context object against which the expression is evaluated.
@@ -54,11 +156,52 @@ public class ExpressionResolver {
         if ((expressionString.startsWith("${") || expressionString.startsWith("#{")) && expressionString.endsWith("}")) {
             expressionString = expressionUtil.stripExpression(expressionString);
         }
-        ExpressionParser parser = new SpelExpressionParser();
-        StandardEvaluationContext evaluationContext = new StandardEvaluationContext(contextRoot);
-        evaluationContextConfigurer.configureEvaluationContext(evaluationContext);
-    	evaluationContext.setVariables(variables);
-        Expression expression = parser.parseExpression(expressionString);
-        return expression.getValue(evaluationContext);
+        StandardEvaluationContext evaluationContext = getEvaluationContext(contextRoot);
+        if (evaluationContext.getRootObject().getValue() != contextRoot) {
+            // MethodResolvers only see the evaluation context, so it has to know the current context root
+            evaluationContext.setRootObject(contextRoot);
+        }
+        Expression expression = expressionCache.get(expressionString, parser);
+        try {
+            return expression.getValue(evaluationContext, contextRoot);
+        } catch (SpelEvaluationException e) {
+            if (e.getMessageCode() != SpelMessage.EXCEPTION_RUNNING_COMPILED_EXPRESSION) {
+                throw e;
+            }
+            // the compiled expression does not fit the objects it is evaluated against (i.e. another context root
+            // type than the one it was compiled for), so this evaluation is interpreted. The cached expression stays
+            // compiled for the objects it fits.
+            logger.debug(String.format("Falling back to interpreted mode for expression '%s'. Reason: %s", expressionString, e.getMessage()));
+            return getInterpretedExpression(expressionString).getValue(evaluationContext, contextRoot);
+        }
+    }
+
+    private Expression getInterpretedExpression(String expressionString) {
+        Expression expression = interpretedExpressions.get(expressionString);
+        if (expression == null) {
+            expression = interpretingParser.parseExpression(expressionString);
+            interpretedExpressions.put(expressionString, expression);
+        }
+        return expression;
+    }
+
+    private StandardEvaluationContext getEvaluationContext(Object contextRoot) {
+        StandardEvaluationContext context = evaluationContext;
+        if (context == null) {
+            // expressions of different parts of a document may be resolved concurrently
+            synchronized (this) {
+                context = evaluationContext;
+                if (context == null) {
+                    context = new StandardEvaluationContext(contextRoot);
+                    evaluationContextConfigurer.configureEvaluationContext(context);
+                    context.setVariables(variables);
+                    for (MethodResolver methodResolver : methodResolvers) {
+                        context.addMethodResolver(methodResolver);
+                    }
+                    evaluationContext = context;
+                }
+            }
+        }
+        return context;
     }
 }
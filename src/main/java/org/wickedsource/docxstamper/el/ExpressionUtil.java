@@ -1,9 +1,8 @@
 package org.wickedsource.docxstamper.el;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class ExpressionUtil {
 
@@ -14,7 +13,7 @@ public class ExpressionUtil {
      * @return a list of expressions (including the starting "${" and trailing "}").
      */
     public List<String> findVariableExpressions(String text) {
-        return findExpressions(text, "\\$\\{.*?\\}");
+        return toStrings(text, scan(text, true, false));
     }
 
     /**
@@ -24,23 +23,80 @@ public class ExpressionUtil {
      * @return a list of expressions (including the starting "#{" and trailing "}").
      */
     public List<String> findProcessorExpressions(String text) {
-        return findExpressions(text, "\\#\\{.*?\\}");
+        return toStrings(text, scan(text, false, true));
     }
 
-    private List<String> findExpressions(String text, String expressionPattern) {
-        List<String> matches = new ArrayList<>();
-        if ("".equals(text) || text == null) {
-            return matches;
+    /**
+     * Finds all variable and processor expressions in a text in a single pass. Braces nested within an expression
+     * and braces within string literals of an expression do not end the expression. Expressions that are not closed
+     * are ignored.
+     *
+     * @param text the text to find expressions in.
+     * @return the positions of the expressions in the order they appear in the text. The list is empty (and no list
+     * is allocated) if the text contains no expressions.
+     */
+    public List<ExpressionMatch> findExpressions(String text) {
+        return scan(text, true, true);
+    }
+
+    private List<ExpressionMatch> scan(String text, boolean variableExpressions, boolean processorExpressions) {
+        if (text == null) {
+            return Collections.emptyList();
         }
-        Pattern pattern = Pattern.compile(expressionPattern);
-        Matcher matcher = pattern.matcher(text);
+        List<ExpressionMatch> matches = null;
+        int length = text.length();
         int index = 0;
-        while (matcher.find(index)) {
-            String match = matcher.group();
-            matches.add(match);
-            index = matcher.end();
+        while (index < length - 1) {
+            char c = text.charAt(index);
+            if (((c == '$' && variableExpressions) || (c == '#' && processorExpressions)) && text.charAt(index + 1) == '{') {
+                int closingBrace = findClosingBrace(text, index + 2);
+                if (closingBrace != -1) {
+                    if (matches == null) {
+                        matches = new ArrayList<>();
+                    }
+                    matches.add(new ExpressionMatch(index, closingBrace + 1, c == '#'));
+                    index = closingBrace + 1;
+                    continue;
+                }
+            }
+            index++;
+        }
+        return matches == null ? Collections.<ExpressionMatch>emptyList() : matches;
+    }
+
+    private int findClosingBrace(String text, int from) {
+        int depth = 0;
+        char quote = 0;
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                // an escaped quote ('' or "") simply closes and re-opens the literal
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                if (depth == 0) {
+                    return i;
+                }
+                depth--;
+            }
+        }
+        return -1;
+    }
+
+    private List<String> toStrings(String text, List<ExpressionMatch> matches) {
+        if (matches.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> expressions = new ArrayList<>(matches.size());
+        for (ExpressionMatch match : matches) {
+            expressions.add(match.getExpression(text));
         }
-        return matches;
+        return expressions;
     }
 
     /**
@@ -53,9 +109,9 @@ public class ExpressionUtil {
         if (expression == null) {
             throw new IllegalArgumentException("Cannot strip NULL expression!");
         }
-        expression = expression.replaceAll("^\\$\\{", "").replaceAll("\\}$", "");
-        expression = expression.replaceAll("^#\\{", "").replaceAll("\\}$", "");
-        return expression;
+        int start = expression.startsWith("${") || expression.startsWith("#{") ? 2 : 0;
+        int end = expression.endsWith("}") ? expression.length() - 1 : expression.length();
+        return expression.substring(start, Math.max(start, end));
     }
 
 }
@@ -0,0 +1,160 @@
+package org.wickedsource.docxstamper.el;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.expression.AccessException;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.MethodExecutor;
+import org.springframework.expression.MethodFilter;
+import org.springframework.expression.MethodResolver;
+import org.springframework.expression.TypedValue;
+import org.springframework.expression.spel.support.ReflectiveMethodExecutor;
+import org.springframework.expression.spel.support.ReflectiveMethodResolver;
+
+/**
+ * <p>
+ * SpEL MethodResolver that makes the methods of registered interfaces callable on the root object of an expression,
+ * as if the root object implemented these interfaces. Calls are delegated to the implementation registered for the
+ * interface. This is how comment processors and custom expression functions are exposed to the expression language
+ * without having to wrap the context root in a proxy.
+ * </p>
+ * <p>
+ * Parsed expressions cache the resolved methods, and they may be shared between evaluation contexts (see
+ * {@link ExpressionCache}). Therefore the implementation to call is looked up in the evaluation context on each call
+ * instead of being bound when the method is resolved.
+ * </p>
+ */
+public class InterfaceMethodResolver implements MethodResolver {
+
+    private final Map<Class<?>, Object> interfacesToImplementations = new LinkedHashMap<>();
+
+    private final Map<Class<?>, Set<Class<?>>> interfacesByImplementationClass = new LinkedHashMap<>();
+
+    private final ReflectiveMethodResolver implementationMethodResolver = new ReflectiveMethodResolver();
+
+    /**
+     * Exposes the methods of the given interface to the expression language.
+     *
+     * @param interfaceClass the interface whose methods to expose.
+     * @param implementation the object to delegate calls of the interface methods to.
+     */
+    public void addInterface(Class<?> interfaceClass, Object implementation) {
+        interfacesToImplementations.put(interfaceClass, implementation);
+        Set<Class<?>> interfaces = interfacesByImplementationClass.get(implementation.getClass());
+        if (interfaces == null) {
+            interfaces = new HashSet<>();
+            interfacesByImplementationClass.put(implementation.getClass(), interfaces);
+            implementationMethodResolver.registerMethodFilter(implementation.getClass(), new InterfaceMethodFilter(interfaces));
+        }
+        interfaces.add(interfaceClass);
+    }
+
+    public boolean isEmpty() {
+        return interfacesToImplementations.isEmpty();
+    }
+
+    @Override
+    public MethodExecutor resolve(EvaluationContext context, Object targetObject, String name,
+                                  List<TypeDescriptor> argumentTypes) throws AccessException {
+        if (!isRootObject(context, targetObject)) {
+            return null;
+        }
+        for (Map.Entry<Class<?>, Object> entry : interfacesToImplementations.entrySet()) {
+            Object implementation = entry.getValue();
+            MethodExecutor executor = implementationMethodResolver.resolve(context, implementation, name, argumentTypes);
+            if (executor != null && declares(entry.getKey(), ((ReflectiveMethodExecutor) executor).getMethod())) {
+                return new InterfaceMethodExecutor(entry.getKey(), (ReflectiveMethodExecutor) executor);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isRootObject(EvaluationContext context, Object targetObject) {
+        TypedValue rootObject = context.getRootObject();
+        return rootObject != null && rootObject.getValue() == targetObject;
+    }
+
+    private static boolean declares(Class<?> interfaceClass, Method method) {
+        for (Method interfaceMethod : interfaceClass.getMethods()) {
+            if (interfaceMethod.getName().equals(method.getName())
+                    && Arrays.equals(interfaceMethod.getParameterTypes(), method.getParameterTypes())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the implementation registered for the given interface in any InterfaceMethodResolver of the given
+     * evaluation context.
+     */
+    private static Object findImplementation(EvaluationContext context, Class<?> interfaceClass) {
+        for (MethodResolver resolver : context.getMethodResolvers()) {
+            if (resolver instanceof InterfaceMethodResolver) {
+                Object implementation = ((InterfaceMethodResolver) resolver).interfacesToImplementations.get(interfaceClass);
+                if (implementation != null) {
+                    return implementation;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Only lets through the methods of an implementation class that are declared by one of the interfaces it has
+     * been registered for.
+     */
+    private static class InterfaceMethodFilter implements MethodFilter {
+
+        private final Set<Class<?>> interfaces;
+
+        private InterfaceMethodFilter(Set<Class<?>> interfaces) {
+            this.interfaces = interfaces;
+        }
+
+        @Override
+        public List<Method> filter(List<Method> methods) {
+            List<Method> interfaceMethods = new ArrayList<>();
+            for (Method method : methods) {
+                for (Class<?> interfaceClass : interfaces) {
+                    if (declares(interfaceClass, method)) {
+                        interfaceMethods.add(method);
+                        break;
+                    }
+                }
+            }
+            return interfaceMethods;
+        }
+    }
+
+    private static class InterfaceMethodExecutor implements MethodExecutor {
+
+        private final Class<?> interfaceClass;
+
+        private final ReflectiveMethodExecutor delegate;
+
+        private InterfaceMethodExecutor(Class<?> interfaceClass, ReflectiveMethodExecutor delegate) {
+            this.interfaceClass = interfaceClass;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public TypedValue execute(EvaluationContext context, Object target, Object... arguments) throws AccessException {
+            Object implementation = findImplementation(context, interfaceClass);
+            if (implementation == null || !isRootObject(context, target)
+                    || !delegate.getMethod().getDeclaringClass().isInstance(implementation)) {
+                // let SpEL resolve the method again
+                throw new AccessException(String.format("Method %s is not exposed for this evaluation", delegate.getMethod()));
+            }
+            return delegate.execute(context, implementation, arguments);
+        }
+    }
+}
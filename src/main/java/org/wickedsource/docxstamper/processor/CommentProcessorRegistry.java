@@ -2,19 +2,19 @@ package org.wickedsource.docxstamper.processor;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.docx4j.XmlUtils;
 import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
 import org.docx4j.wml.Comments;
+import org.docx4j.wml.R;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.expression.spel.SpelEvaluationException;
 import org.springframework.expression.spel.SpelParseException;
-import org.wickedsource.docxstamper.api.DocxStamperException;
 import org.wickedsource.docxstamper.api.UnresolvedExpressionException;
 import org.wickedsource.docxstamper.api.commentprocessor.ICommentProcessor;
 import org.wickedsource.docxstamper.api.coordinates.ParagraphCoordinates;
@@ -22,14 +22,15 @@ import org.wickedsource.docxstamper.api.coordinates.RunCoordinates;
 import org.wickedsource.docxstamper.api.coordinates.TableCoordinates;
 import org.wickedsource.docxstamper.el.ExpressionResolver;
 import org.wickedsource.docxstamper.el.ExpressionUtil;
-import org.wickedsource.docxstamper.proxy.ProxyBuilder;
-import org.wickedsource.docxstamper.proxy.ProxyException;
+import org.wickedsource.docxstamper.el.InterfaceMethodResolver;
 import org.wickedsource.docxstamper.replace.PlaceholderReplacer;
+import org.wickedsource.docxstamper.template.ParagraphSite;
+import org.wickedsource.docxstamper.template.ResolvedSiteTable;
+import org.wickedsource.docxstamper.template.SiteCollector;
 import org.wickedsource.docxstamper.util.CommentUtil;
 import org.wickedsource.docxstamper.util.CommentWrapper;
 import org.wickedsource.docxstamper.util.ParagraphWrapper;
-import org.wickedsource.docxstamper.util.walk.BaseCoordinatesWalker;
-import org.wickedsource.docxstamper.util.walk.CoordinatesWalker;
+import org.wickedsource.docxstamper.util.RunUtil;
 
 /**
  * Allows registration of ICommentProcessor objects. Each registered
@@ -41,10 +42,10 @@ public class CommentProcessorRegistry implements ICommentProcessorRegistry {
 
 	private Logger logger = LoggerFactory.getLogger(CommentProcessorRegistry.class);
 
-	private Map<ICommentProcessor, Class<?>> commentProcessorInterfaces = new HashMap<>();
-
 	private List<ICommentProcessor> commentProcessors = new ArrayList<>();
 
+	private InterfaceMethodResolver commentProcessorMethodResolver = new InterfaceMethodResolver();
+
 	private ExpressionResolver expressionResolver = new ExpressionResolver();
 
 	private ExpressionUtil expressionUtil = new ExpressionUtil();
@@ -55,10 +56,16 @@ public class CommentProcessorRegistry implements ICommentProcessorRegistry {
 
 	public CommentProcessorRegistry(PlaceholderReplacer placeholderReplacer) {
 		this.placeholderReplacer = placeholderReplacer;
+		this.expressionResolver.addMethodResolver(commentProcessorMethodResolver);
 	}
 
+	/**
+	 * Sets the ExpressionResolver to evaluate comments with. The methods of the registered comment processor
+	 * interfaces are exposed to the ExpressionResolver.
+	 */
 	public void setExpressionResolver(ExpressionResolver expressionResolver) {
 		this.expressionResolver = expressionResolver;
+		this.expressionResolver.addMethodResolver(commentProcessorMethodResolver);
 	}
 
 	public ExpressionResolver getExpressionResolver() {
@@ -67,8 +74,8 @@ public class CommentProcessorRegistry implements ICommentProcessorRegistry {
 
 	public void registerCommentProcessor(Class<?> interfaceClass,
 										 ICommentProcessor commentProcessor) {
-		this.commentProcessorInterfaces.put(commentProcessor, interfaceClass);
 		this.commentProcessors.add(commentProcessor);
+		this.commentProcessorMethodResolver.addInterface(interfaceClass, commentProcessor);
 	}
 
 	/**
@@ -83,8 +90,24 @@ public class CommentProcessorRegistry implements ICommentProcessorRegistry {
 	 * @param <T>         type of the contextRoot object.
 	 */
 	public <T> void runProcessors(final WordprocessingMLPackage document, final T contextRoot) {
-		List<Info> actions = prepareRunProcessors(document);
+		runProcessors(document, contextRoot, new SiteCollector(document, null).collectResolved());
+	}
 
+	/**
+	 * Same as runProcessors(WordprocessingMLPackage, T) except that only the paragraphs listed in the given
+	 * {@link ResolvedSiteTable} are looked at instead of walking the whole document.
+	 *
+	 * @param document    the docx document over which to run the registered ICommentProcessors.
+	 * @param contextRoot the context root object against which to resolve expressions within the
+	 *                    comments.
+	 * @param sites       the sites of the document.
+	 * @param <T>         type of the contextRoot object.
+	 */
+	public <T> void runProcessors(final WordprocessingMLPackage document, final T contextRoot, ResolvedSiteTable sites) {
+		runProcessors(document, contextRoot, prepareRunProcessors(sites));
+	}
+
+	private <T> void runProcessors(final WordprocessingMLPackage document, final T contextRoot, List<Info> actions) {
 		for (Info info : actions) {
 			if (info.getRunCoordinates() == null) {
 				runProcessorsOnParagraphComment(document, info.getCommentWrapper(), info.getComment(), contextRoot, info.getParagrapheCoordinates());
@@ -92,7 +115,7 @@ public class CommentProcessorRegistry implements ICommentProcessorRegistry {
 			} else {
 				runProcessorsOnRunComment(document, info.getCommentWrapper(), info.getComment(), contextRoot, info.getRunCoordinates(), info.getParagrapheCoordinates());
 			}
-		};
+		}
 
 		for (ICommentProcessor processor : commentProcessors) {
 			processor.commitChanges(document);
@@ -100,38 +123,48 @@ public class CommentProcessorRegistry implements ICommentProcessorRegistry {
 
 	}
 
+	/**
+	 * Collects the comments of the specified docx document that the registered ICommentProcessors will have to
+	 * process, in document order. Processor expressions are only resolved within commented paragraphs.
+	 *
+	 * @param document the docx document.
+	 */
+	public List<Info> prepareRunProcessors(final WordprocessingMLPackage document) {
+		return prepareRunProcessors(new SiteCollector(document, null).collectResolved());
+	}
 
 	/**
-	 * Lets each registered ICommentProcessor have a run on the specified docx
-	 * document. At the end of the document the commit method is called for each
-	 * ICommentProcessor. The ICommentProcessors are run in the order they were
-	 * registered.
+	 * Same as prepareRunProcessors(WordprocessingMLPackage) except that the paragraphs are taken from the given
+	 * {@link ResolvedSiteTable} instead of walking the document. The runs and paragraphs are visited in the same order
+	 * as the {@link org.wickedsource.docxstamper.util.walk.CoordinatesWalker} would visit them.
 	 *
-	 * @param document    the docx document over which to run the registered ICommentProcessors.
-	 * @param contextRoot the context root object against which to resolve expressions within the
-	 *                    comments.
-	 * @param <T>         type of the contextRoot object.
+	 * @param sites the sites of the docx document.
 	 */
-	public <T> List<Info> prepareRunProcessors(final WordprocessingMLPackage document) {
-		final Map<BigInteger, CommentWrapper> comments = CommentUtil.getComments(document);
+	public List<Info> prepareRunProcessors(ResolvedSiteTable sites) {
+		final Map<BigInteger, CommentWrapper> comments = sites.getComments();
+		final Map<BigInteger, Comments.Comment> commentsById = sites.getCommentsById();
 		final List<Info> commentInformations = new ArrayList<>();
 		final Set<BigInteger> processedComment = new HashSet<>();
 
-		CoordinatesWalker walker = new BaseCoordinatesWalker(document) {
-			@Override
-			protected void onParagraph(ParagraphCoordinates paragraphCoordinates) {
-				Info info = gatherInformations(document, comments, paragraphCoordinates);
-				if (info != null && processedComment.add(info.getCommentWrapper().getComment().getId())) commentInformations.add(info);
-			}
-
-			@Override
-			protected CommentWrapper onRun(RunCoordinates runCoordinates, ParagraphCoordinates paragraphCoordinates) {
-				Info info = gatherInformations(document, comments, runCoordinates, paragraphCoordinates);
-				if (info != null && processedComment.add(info.getCommentWrapper().getComment().getId())) commentInformations.add(info);
-				return null;
+		for (int i = 0; i < sites.size(); i++) {
+			ParagraphSite site = sites.getSite(i);
+			ParagraphCoordinates paragraphCoordinates = sites.getCoordinates(i);
+			Info info = null;
+			if (site.hasComments()) {
+				if (paragraphCoordinates.getParentTableCellCoordinates() == null) {
+					for (Object contentElement : paragraphCoordinates.getParagraph().getContent()) {
+						if (XmlUtils.unwrap(contentElement) instanceof R) {
+							RunCoordinates runCoordinates = new RunCoordinates((R) contentElement, 0);
+							Info runInfo = gatherInformations(commentsById, comments, runCoordinates, paragraphCoordinates);
+							if (runInfo != null && processedComment.add(runInfo.getCommentWrapper().getComment().getId())) commentInformations.add(runInfo);
+						}
+					}
+				}
+				info = gatherInformations(commentsById, comments, paragraphCoordinates);
+				if (info != null && !processedComment.add(info.getCommentWrapper().getComment().getId())) info = null;
 			}
-		};
-		walker.walk();
+			if (info != null) commentInformations.add(info);
+		}
 		return commentInformations;
 	}
 
@@ -158,6 +191,9 @@ public class CommentProcessorRegistry implements ICommentProcessorRegistry {
 	 */
 	private <T> void runProcessorsOnInlineContent(T contextRoot,
 												  ParagraphCoordinates paragraphCoordinates) {
+		if (!RunUtil.containsChar(paragraphCoordinates.getParagraph(), '#')) {
+			return;
+		}
 
 		ParagraphWrapper paragraph = new ParagraphWrapper(paragraphCoordinates.getParagraph());
 		List<String> processorExpressions = expressionUtil
@@ -166,18 +202,12 @@ public class CommentProcessorRegistry implements ICommentProcessorRegistry {
 		for (String processorExpression : processorExpressions) {
 			String strippedExpression = expressionUtil.stripExpression(processorExpression);
 
-			ProxyBuilder<T> proxyBuilder = new ProxyBuilder<T>()
-					.withRoot(contextRoot);
-
 			for (final ICommentProcessor processor : commentProcessors) {
-				Class<?> commentProcessorInterface = commentProcessorInterfaces.get(processor);
-				proxyBuilder.withInterface(commentProcessorInterface, processor);
 				processor.setCurrentParagraphCoordinates(paragraphCoordinates);
 			}
 
 			try {
-				T contextRootProxy = proxyBuilder.build();
-				expressionResolver.resolveExpression(strippedExpression, contextRootProxy);
+				expressionResolver.resolveExpression(strippedExpression, contextRoot);
 				placeholderReplacer.replace(paragraph, processorExpression, null);
 				logger.debug(String.format(
 						"Processor expression '%s' has been successfully processed by a comment processor.",
@@ -191,11 +221,6 @@ public class CommentProcessorRegistry implements ICommentProcessorRegistry {
 							processorExpression, e.getMessage()));
 					logger.trace("Reason for skipping processor expression: ", e);
 				}
-			} catch (ProxyException e) {
-				throw new DocxStamperException(
-						String.format("Could not create a proxy around context root object of class %s",
-								contextRoot.getClass()),
-						e);
 			}
 		}
 	}
@@ -216,18 +241,12 @@ public class CommentProcessorRegistry implements ICommentProcessorRegistry {
 													 CommentWrapper commentWrapper, String commentString,
 													 T contextRoot,
 													 ParagraphCoordinates paragraphCoordinates) {
-		ProxyBuilder<T> proxyBuilder = new ProxyBuilder<T>()
-				.withRoot(contextRoot);
-
 		for (final ICommentProcessor processor : commentProcessors) {
-			Class<?> commentProcessorInterface = commentProcessorInterfaces.get(processor);
-			proxyBuilder.withInterface(commentProcessorInterface, processor);
 			processor.setCurrentParagraphCoordinates(paragraphCoordinates);
 		}
 
 		try {
-			T contextRootProxy = proxyBuilder.build();
-			expressionResolver.resolveExpression(commentString, contextRootProxy);
+			expressionResolver.resolveExpression(commentString, contextRoot);
 			CommentUtil.deleteComment(commentWrapper);
 			logger.debug(
 					String.format("Comment '%s' has been successfully processed by a comment processor.",
@@ -241,10 +260,6 @@ public class CommentProcessorRegistry implements ICommentProcessorRegistry {
 						commentString, e.getMessage()));
 				logger.trace("Reason for skipping comment: ", e);
 			}
-		} catch (ProxyException e) {
-			throw new DocxStamperException(String.format(
-					"Could not create a proxy around context root object of class %s",
-					contextRoot.getClass()), e);
 		}
 
 	}
@@ -253,71 +268,57 @@ public class CommentProcessorRegistry implements ICommentProcessorRegistry {
 	 * Retrieve all the information that will be usefull later on filtering the document
 	 * {@link ICommentProcessor}s.
 	 *
-	 * @param document             the word document.
+	 * @param commentsById         the comments of the document by their id.
 	 * @param comments             the comments within the document.
-	 * @param contextRoot          the context root against which to evaluate the expressions.
 	 * @param paragraphCoordinates the paragraph whose comments to evaluate.
 	 * @param <T>                  the type of the context root object.
 	 */
-	private <T> Info gatherInformations(final WordprocessingMLPackage document,
+	private <T> Info gatherInformations(final Map<BigInteger, Comments.Comment> commentsById,
 													 final Map<BigInteger, CommentWrapper> comments,
 													 final ParagraphCoordinates paragraphCoordinates) {
-		return gatherInformations(document, comments, null, paragraphCoordinates);
+		return gatherInformations(commentsById, comments, null, paragraphCoordinates);
 	}
 
 	private <T> CommentWrapper runProcessorsOnRunComment(final WordprocessingMLPackage document,
 														CommentWrapper commentWrapper, String commentString,
 														T contextRoot, RunCoordinates runCoordinates,
 														 ParagraphCoordinates paragraphCoordinates) {
-		ProxyBuilder<T> proxyBuilder = new ProxyBuilder<T>()
-				.withRoot(contextRoot);
-
 		for (final ICommentProcessor processor : commentProcessors) {
-			Class<?> commentProcessorInterface = commentProcessorInterfaces.get(processor);
-			proxyBuilder.withInterface(commentProcessorInterface, processor);
 			processor.setCurrentParagraphCoordinates(paragraphCoordinates);
 			processor.setCurrentRunCoordinates(runCoordinates);
 			processor.setRegistry(this);
 		}
 
 		try {
-			T contextRootProxy = proxyBuilder.build();
-
-			try {
-				expressionResolver.resolveExpression(commentString, contextRootProxy);
-				logger.debug(
-						String.format("Comment '%s' has been successfully processed by a comment processor.",
-								commentString));
-				return commentWrapper;
-			} catch (SpelEvaluationException | SpelParseException e) {
-				if (failOnInvalidExpression) {
-					throw new UnresolvedExpressionException(commentString, e);
-				} else {
-					logger.warn(String.format(
-							"Skipping comment expression '%s' because it can not be resolved by any comment processor. Reason: %s. Set log level to TRACE to view Stacktrace.",
-							commentString, e.getMessage()));
-					logger.trace("Reason for skipping comment: ", e);
-				}
+			expressionResolver.resolveExpression(commentString, contextRoot);
+			logger.debug(
+					String.format("Comment '%s' has been successfully processed by a comment processor.",
+							commentString));
+			return commentWrapper;
+		} catch (SpelEvaluationException | SpelParseException e) {
+			if (failOnInvalidExpression) {
+				throw new UnresolvedExpressionException(commentString, e);
+			} else {
+				logger.warn(String.format(
+						"Skipping comment expression '%s' because it can not be resolved by any comment processor. Reason: %s. Set log level to TRACE to view Stacktrace.",
+						commentString, e.getMessage()));
+				logger.trace("Reason for skipping comment: ", e);
 			}
-		} catch (ProxyException e) {
-			throw new DocxStamperException(String.format(
-					"Could not create a proxy around context root object of class %s",
-					contextRoot.getClass()), e);
 		}
 
 		return null;
 	}
 
 
-	private <T> Info gatherInformations(final WordprocessingMLPackage document,
+	private <T> Info gatherInformations(final Map<BigInteger, Comments.Comment> commentsById,
 														 final Map<BigInteger, CommentWrapper> comments,
 														 final RunCoordinates runCoordinates,
 														 final ParagraphCoordinates paragraphCoordinates) {
 		Comments.Comment comment;
 		if (runCoordinates != null) {
-			comment = CommentUtil.getCommentAround(runCoordinates.getRun(), document);
+			comment = CommentUtil.getCommentAround(runCoordinates.getRun(), commentsById);
 		} else {
-			comment = CommentUtil.getCommentFor(paragraphCoordinates.getParagraph(), document);
+			comment = CommentUtil.getCommentFor(paragraphCoordinates.getParagraph(), commentsById);
 		}
 		if (comment == null) {
 			// no comment to process
@@ -21,10 +21,18 @@ public class RepeatProcessor extends BaseCommentProcessor implements IRepeatProc
 
     private Map<TableRowCoordinates, List<Object>> tableRowsToRepeat = new HashMap<>();
 
-    private PlaceholderReplacer<Object> placeholderReplacer;
+    private PlaceholderReplacer placeholderReplacer;
 
     public RepeatProcessor(TypeResolverRegistry typeResolverRegistry) {
-        this.placeholderReplacer = new PlaceholderReplacer<>(typeResolverRegistry);
+        this(new PlaceholderReplacer<>(typeResolverRegistry));
+    }
+
+    /**
+     * @param placeholderReplacer the PlaceholderReplacer to resolve the expressions within the repeated rows with,
+     *                            usually the one that resolves the expressions of the rest of the document.
+     */
+    public RepeatProcessor(PlaceholderReplacer placeholderReplacer) {
+        this.placeholderReplacer = placeholderReplacer;
     }
 
     @Override
@@ -2,6 +2,7 @@ package org.wickedsource.docxstamper.replace;
 
 import org.docx4j.jaxb.Context;
 import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.PartName;
 import org.docx4j.wml.Br;
 import org.docx4j.wml.P;
 import org.docx4j.wml.R;
@@ -9,17 +10,26 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.expression.spel.SpelEvaluationException;
 import org.springframework.expression.spel.SpelParseException;
-import org.wickedsource.docxstamper.api.coordinates.ParagraphCoordinates;
+import org.wickedsource.docxstamper.api.DocxStamperException;
 import org.wickedsource.docxstamper.api.typeresolver.ITypeResolver;
 import org.wickedsource.docxstamper.api.typeresolver.TypeResolverRegistry;
+import org.wickedsource.docxstamper.el.ExpressionMatch;
 import org.wickedsource.docxstamper.el.ExpressionResolver;
 import org.wickedsource.docxstamper.el.ExpressionUtil;
+import org.wickedsource.docxstamper.template.ResolvedSiteTable;
+import org.wickedsource.docxstamper.template.SiteCollector;
 import org.wickedsource.docxstamper.util.ParagraphWrapper;
 import org.wickedsource.docxstamper.util.RunUtil;
-import org.wickedsource.docxstamper.util.walk.BaseCoordinatesWalker;
-import org.wickedsource.docxstamper.util.walk.CoordinatesWalker;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 public class PlaceholderReplacer<T> {
 
@@ -33,6 +43,10 @@ public class PlaceholderReplacer<T> {
 
     private String lineBreakPlaceholder;
 
+    private Executor executor;
+
+    private int chunkSize;
+
     public PlaceholderReplacer(TypeResolverRegistry typeResolverRegistry) {
         this.typeResolverRegistry = typeResolverRegistry;
     }
@@ -46,6 +60,23 @@ public class PlaceholderReplacer<T> {
         this.expressionResolver = expressionResolver;
     }
 
+    /**
+     * Sets the executor on which the parts of a document (headers, main document, footers) are processed
+     * concurrently. If no executor is set (the default), the parts are processed one after the other.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the minimum number of paragraphs with expressions in the main document that are processed as one task
+     * when an executor is set. The main document is split into chunks of consecutive top-level blocks (paragraphs
+     * and tables) of at least this many paragraphs. 0 (the default) processes the main document as one task.
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
     /**
      * Finds expressions in a document and resolves them against the specified context object. The expressions in the
      * document are then replaced by the resolved values.
@@ -54,33 +85,153 @@ public class PlaceholderReplacer<T> {
      * @param expressionContext the context to resolve the expressions against.
      */
     public void resolveExpressions(final WordprocessingMLPackage document, final T expressionContext) {
-        CoordinatesWalker walker = new BaseCoordinatesWalker(document) {
+        resolveExpressions(document, expressionContext, new SiteCollector(document, lineBreakPlaceholder).collectResolved());
+    }
+
+    /**
+     * Same as resolveExpressions(WordprocessingMLPackage, T) except that only the paragraphs listed in the given
+     * {@link ResolvedSiteTable} are processed instead of walking the whole document.
+     *
+     * @param document          the document in which to replace all expressions.
+     * @param expressionContext the context to resolve the expressions against.
+     * @param sites             the sites of the document.
+     */
+    public void resolveExpressions(final WordprocessingMLPackage document, final T expressionContext, final ResolvedSiteTable sites) {
+        if (executor == null) {
+            for (int i = 0; i < sites.size(); i++) {
+                resolveExpressionsForSite(sites, i, expressionContext, document);
+            }
+            return;
+        }
+        List<FutureTask<Void>> tasks = new ArrayList<>();
+        PartName mainDocumentPartName = document.getMainDocumentPart().getPartName();
+        for (Map.Entry<PartName, List<Integer>> partSites : groupByPart(sites).entrySet()) {
+            List<List<Integer>> chunks = chunkSize > 0 && partSites.getKey().equals(mainDocumentPartName)
+                    ? splitIntoChunks(sites, partSites.getValue())
+                    : Collections.singletonList(partSites.getValue());
+            for (List<Integer> chunk : chunks) {
+                tasks.add(createTask(sites, chunk, expressionContext, document));
+            }
+        }
+        // the first task is processed on the calling thread, which has to wait for the other tasks anyway
+        for (int i = 1; i < tasks.size(); i++) {
+            executor.execute(tasks.get(i));
+        }
+        if (!tasks.isEmpty()) {
+            tasks.get(0).run();
+        }
+        awaitAll(tasks);
+    }
+
+    /**
+     * Creates a task that resolves the expressions of the given sites. Each paragraph is only modified by the task
+     * it belongs to, so the result does not depend on the order in which the tasks are executed.
+     */
+    private FutureTask<Void> createTask(final ResolvedSiteTable sites, final List<Integer> siteIndices,
+                                        final T expressionContext, final WordprocessingMLPackage document) {
+        return new FutureTask<>(new Callable<Void>() {
             @Override
-            protected void onParagraph(ParagraphCoordinates paragraphCoordinates) {
-                resolveExpressionsForParagraph(paragraphCoordinates.getParagraph(), expressionContext, document);
+            public Void call() {
+                for (int i : siteIndices) {
+                    resolveExpressionsForSite(sites, i, expressionContext, document);
+                }
+                return null;
             }
-        };
-        walker.walk();
+        });
+    }
+
+    /**
+     * Splits the given sites of one part into chunks of at least chunkSize sites. Chunks only end at the border of a
+     * top-level block, so the paragraphs of a table are always processed by the same task.
+     */
+    private List<List<Integer>> splitIntoChunks(ResolvedSiteTable sites, List<Integer> partSites) {
+        List<List<Integer>> chunks = new ArrayList<>();
+        List<Integer> chunk = new ArrayList<>();
+        for (int i : partSites) {
+            if (chunk.size() >= chunkSize
+                    && sites.getSite(i).getBlockIndex() != sites.getSite(chunk.get(chunk.size() - 1)).getBlockIndex()) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+            }
+            chunk.add(i);
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private void resolveExpressionsForSite(ResolvedSiteTable sites, int index, T expressionContext, WordprocessingMLPackage document) {
+        if (sites.getSite(index).hasPlaceholders()) {
+            resolveExpressionsForParagraph(sites.getCoordinates(index).getParagraph(), expressionContext, document);
+        }
+    }
+
+    private Map<PartName, List<Integer>> groupByPart(ResolvedSiteTable sites) {
+        Map<PartName, List<Integer>> sitesByPart = new LinkedHashMap<>();
+        for (int i = 0; i < sites.size(); i++) {
+            if (!sites.getSite(i).hasPlaceholders()) {
+                continue;
+            }
+            PartName partName = sites.getSite(i).getPartName();
+            List<Integer> partSites = sitesByPart.get(partName);
+            if (partSites == null) {
+                partSites = new ArrayList<>();
+                sitesByPart.put(partName, partSites);
+            }
+            partSites.add(i);
+        }
+        return sitesByPart;
+    }
+
+    /**
+     * Waits for all tasks to finish and rethrows the first failure (in document order).
+     */
+    private void awaitAll(List<FutureTask<Void>> tasks) {
+        RuntimeException failure = null;
+        for (FutureTask<Void> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause()
+                            : new DocxStamperException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DocxStamperException("Interrupted while waiting for the parts of the document to be stamped!", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
     }
 
-    @SuppressWarnings("unchecked")
     public void resolveExpressionsForParagraph(P p, T expressionContext, WordprocessingMLPackage document) {
+        if (!mayContainPlaceholders(p)) {
+            return;
+        }
         ParagraphWrapper paragraphWrapper = new ParagraphWrapper(p);
-        List<String> placeholders = expressionUtil.findVariableExpressions(paragraphWrapper.getText());
-        for (String placeholder : placeholders) {
-            try {
-                Object replacement = expressionResolver.resolveExpression(placeholder, expressionContext);
-                if (replacement != null) {
-                    ITypeResolver resolver = typeResolverRegistry.getResolverForType(replacement.getClass());
-                    Object replacementObject = resolver.resolve(document, replacement);
-                    replace(paragraphWrapper, placeholder, replacementObject);
-                    logger.debug(String.format("Replaced expression '%s' with value provided by TypeResolver %s", placeholder, resolver.getClass()));
+        String text = paragraphWrapper.getText();
+        List<ExpressionMatch> matches = expressionUtil.findExpressions(text);
+        if (!matches.isEmpty()) {
+            // expressions are resolved in document order, but replaced from right to left so that the positions of
+            // the remaining matches stay valid
+            Object[] replacementObjects = new Object[matches.size()];
+            for (int i = 0; i < matches.size(); i++) {
+                ExpressionMatch match = matches.get(i);
+                if (!match.isProcessorExpression()) {
+                    replacementObjects[i] = resolvePlaceholder(match.getExpression(text), expressionContext, document);
+                }
+            }
+            for (int i = matches.size() - 1; i >= 0; i--) {
+                if (replacementObjects[i] != null) {
+                    replace(paragraphWrapper, matches.get(i).getStart(), matches.get(i).getEnd(), replacementObjects[i]);
                 }
-            } catch (SpelEvaluationException | SpelParseException e) {
-                logger.warn(String.format(
-                        "Expression %s could not be resolved against context root of type %s. Reason: %s. Set log level to TRACE to view Stacktrace.",
-                        placeholder, expressionContext.getClass(), e.getMessage()));
-                logger.trace("Reason for skipping expression:", e);
             }
         }
         if (this.lineBreakPlaceholder != null) {
@@ -88,22 +239,73 @@ public class PlaceholderReplacer<T> {
         }
     }
 
+    /**
+     * Resolves the given placeholder and converts its value with the matching TypeResolver.
+     *
+     * @return the object to replace the placeholder with or null if the placeholder is to be left untouched.
+     */
+    @SuppressWarnings("unchecked")
+    private Object resolvePlaceholder(String placeholder, T expressionContext, WordprocessingMLPackage document) {
+        try {
+            Object replacement = expressionResolver.resolveExpression(placeholder, expressionContext);
+            if (replacement != null) {
+                ITypeResolver resolver = typeResolverRegistry.getResolverForType(replacement.getClass());
+                Object replacementObject = resolver.resolve(document, replacement);
+                logger.debug(String.format("Replaced expression '%s' with value provided by TypeResolver %s", placeholder, resolver.getClass()));
+                return replacementObject;
+            }
+        } catch (SpelEvaluationException | SpelParseException e) {
+            logger.warn(String.format(
+                    "Expression %s could not be resolved against context root of type %s. Reason: %s. Set log level to TRACE to view Stacktrace.",
+                    placeholder, expressionContext.getClass(), e.getMessage()));
+            logger.trace("Reason for skipping expression:", e);
+        }
+        return null;
+    }
+
+    /**
+     * Cheap check that rules out most paragraphs without expressions before the text of the paragraph is built.
+     */
+    private boolean mayContainPlaceholders(P p) {
+        return RunUtil.containsChar(p, '$')
+                || (lineBreakPlaceholder != null && !lineBreakPlaceholder.isEmpty()
+                && RunUtil.containsChar(p, lineBreakPlaceholder.charAt(0)));
+    }
+
     private void replaceLineBreaks(ParagraphWrapper paragraphWrapper) {
-        Br lineBreak = Context.getWmlObjectFactory().createBr();
-        R run = RunUtil.create(lineBreak);
-        while (paragraphWrapper.getText().contains(this.lineBreakPlaceholder)) {
-            replace(paragraphWrapper, this.lineBreakPlaceholder, run);
+        if (lineBreakPlaceholder.isEmpty()) {
+            return;
+        }
+        String text = paragraphWrapper.getText();
+        List<Integer> occurrences = new ArrayList<>();
+        int index = text.indexOf(lineBreakPlaceholder);
+        while (index != -1) {
+            occurrences.add(index);
+            index = text.indexOf(lineBreakPlaceholder, index + lineBreakPlaceholder.length());
+        }
+        for (int i = occurrences.size() - 1; i >= 0; i--) {
+            Br lineBreak = Context.getWmlObjectFactory().createBr();
+            int start = occurrences.get(i);
+            replace(paragraphWrapper, start, start + lineBreakPlaceholder.length(), RunUtil.create(lineBreak));
         }
     }
 
     public void replace(ParagraphWrapper p, String placeholder, Object replacementObject) {
+        p.replace(placeholder, prepareReplacement(p, replacementObject));
+    }
+
+    private void replace(ParagraphWrapper p, int startIndex, int endIndex, Object replacementObject) {
+        p.replace(startIndex, endIndex, prepareReplacement(p, replacementObject));
+    }
+
+    private Object prepareReplacement(ParagraphWrapper p, Object replacementObject) {
         if (replacementObject == null) {
             replacementObject = RunUtil.create("");
         }
         if (replacementObject instanceof R) {
             RunUtil.applyParagraphStyle(p.getParagraph(), (R) replacementObject);
         }
-        p.replace(placeholder, replacementObject);
+        return replacementObject;
     }
 
 }
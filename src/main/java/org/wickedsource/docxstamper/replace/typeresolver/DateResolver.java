@@ -3,30 +3,77 @@ package org.wickedsource.docxstamper.replace.typeresolver;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Queue;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
- * This ITypeResolver creates a formatted date String for expressions that return a Date object.
+ * <p>
+ * This ITypeResolver creates a formatted date String for expressions that return a Date object. It may be used by
+ * any number of threads at once without blocking.
+ * </p>
+ * <p>
+ * The format is interpreted as by java.text.SimpleDateFormat. On Java 8 or later, if the format means the same to
+ * java.time.format.DateTimeFormatter (see {@link #checkFormatString(String)}), dates are formatted by the immutable
+ * DateTimeFormatter of a {@link TemporalResolver}. Otherwise, each call borrows a SimpleDateFormat from a lock-free
+ * pool, which only grows to the number of threads formatting dates at the same time.
+ * </p>
  */
 public class DateResolver extends AbstractToTextResolver<Date> {
 
+    /**
+     * 2015-06-30 13:45:30.123 UTC, a date whose fields differ from each other, so that a format that is interpreted
+     * differently by SimpleDateFormat and DateTimeFormatter (e.g. "u", "F" or "S") gives different results.
+     */
+    private static final long PROBE_MILLIS = 1435671930123L;
+
     private String formatString;
 
+    private TemporalResolver temporalResolver;
+
     private DateFormat dateFormat;
 
+    private final Queue<DateFormat> pool = new ConcurrentLinkedQueue<>();
+
     /**
-     * Creates a new DateResolver.
+     * Creates a new DateResolver that formats dates in the default time zone.
      *
      * @param formatString the format to use for date formatting. See java.text.SimpleDateFormat.
      */
     public DateResolver(String formatString) {
+        this(formatString, TimeZone.getDefault());
+    }
+
+    /**
+     * Creates a new DateResolver that formats dates in the given time zone.
+     *
+     * @param formatString the format to use for date formatting. See java.text.SimpleDateFormat.
+     * @param timeZone     the time zone to format dates in.
+     */
+    public DateResolver(String formatString, TimeZone timeZone) {
         this.formatString = formatString;
-        this.dateFormat = new SimpleDateFormat(formatString);
+        if (TemporalResolver.isSupported() && findDifference(formatString) == null) {
+            this.temporalResolver = new TemporalResolver(formatString, timeZone);
+        } else {
+            this.dateFormat = new SimpleDateFormat(formatString);
+            this.dateFormat.setTimeZone(timeZone);
+        }
     }
 
     @Override
     protected String resolveStringForObject(Date date) {
-        synchronized (dateFormat) {
-            return dateFormat.format(date);
+        if (temporalResolver != null) {
+            return temporalResolver.resolveStringForObject(TemporalResolver.toInstant(date));
+        }
+        DateFormat format = pool.poll();
+        if (format == null) {
+            // DateFormat is not thread-safe, so each thread needs its own copy
+            format = (DateFormat) dateFormat.clone();
+        }
+        try {
+            return format.format(date);
+        } finally {
+            pool.offer(format);
         }
     }
 
@@ -34,4 +81,48 @@ public class DateResolver extends AbstractToTextResolver<Date> {
         return formatString;
     }
 
+    /**
+     * Checks that the given format is valid and, on Java 8 or later, is understood in the same way by
+     * java.text.SimpleDateFormat and java.time.format.DateTimeFormatter. The two differ for some pattern letters (like
+     * "u", which is the day of the week for SimpleDateFormat but the year for DateTimeFormatter).
+     *
+     * @param formatString the format to check.
+     * @throws IllegalArgumentException if the format is invalid or means different things to both formatters.
+     */
+    public static void checkFormatString(String formatString) {
+        // throws if the format is invalid for SimpleDateFormat
+        new SimpleDateFormat(formatString);
+        if (TemporalResolver.isSupported()) {
+            String difference = findDifference(formatString);
+            if (difference != null) {
+                throw new IllegalArgumentException("Date format '" + formatString + "' " + difference + "!");
+            }
+        }
+    }
+
+    /**
+     * Formats a probe date with both formatters. Requires Java 8 or later and a format that is valid for
+     * SimpleDateFormat.
+     *
+     * @return how the formatters differ on the given format or null if they give the same result.
+     */
+    private static String findDifference(String formatString) {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        SimpleDateFormat simpleDateFormat = new SimpleDateFormat(formatString);
+        simpleDateFormat.setTimeZone(utc);
+        String simpleDateFormatResult = simpleDateFormat.format(new Date(PROBE_MILLIS));
+        String dateTimeFormatterResult;
+        try {
+            dateTimeFormatterResult = new TemporalResolver(formatString, utc)
+                    .resolveStringForObject(TemporalResolver.toInstant(new Date(PROBE_MILLIS)));
+        } catch (RuntimeException e) {
+            return "is not supported by DateTimeFormatter (" + e.getMessage() + ")";
+        }
+        if (!simpleDateFormatResult.equals(dateTimeFormatterResult)) {
+            return "means different things to SimpleDateFormat ('" + simpleDateFormatResult + "') and " +
+                    "DateTimeFormatter ('" + dateTimeFormatterResult + "')";
+        }
+        return null;
+    }
+
 }
@@ -0,0 +1,143 @@
+package org.wickedsource.docxstamper.replace.typeresolver;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.wickedsource.docxstamper.api.DocxStamperException;
+
+/**
+ * <p>
+ * This ITypeResolver creates a formatted date String for expressions that return a java.time object (like
+ * LocalDate, LocalDateTime, ZonedDateTime or Instant). Formatting is done by an immutable
+ * java.time.format.DateTimeFormatter, so the resolver may be used by any number of threads at once without locking.
+ * </p>
+ * <p>
+ * java.time is accessed by reflection, since the library is compiled for Java 7. The resolver can only be created on
+ * Java 8 or later (see {@link #isSupported()}).
+ * </p>
+ */
+public class TemporalResolver extends AbstractToTextResolver<Object> {
+
+    private static final Class<?> dateTimeFormatterClass = findClass("java.time.format.DateTimeFormatter");
+
+    private static final Class<?> zoneIdClass = findClass("java.time.ZoneId");
+
+    private static final Method toZoneIdMethod = findMethod(TimeZone.class, "toZoneId");
+
+    private static final Method dateToInstantMethod = findMethod(Date.class, "toInstant");
+
+    private String formatString;
+
+    private Object formatter;
+
+    private Method formatMethod;
+
+    /**
+     * Creates a new TemporalResolver for date and time objects that carry all fields the format refers to (like
+     * LocalDate, LocalDateTime or ZonedDateTime).
+     *
+     * @param formatString the format to use for date formatting. See java.time.format.DateTimeFormatter.
+     */
+    public TemporalResolver(String formatString) {
+        this(formatString, null);
+    }
+
+    /**
+     * Creates a new TemporalResolver that formats objects in the given time zone. This is required for objects that
+     * only denote an instant in time (like Instant).
+     *
+     * @param formatString the format to use for date formatting. See java.time.format.DateTimeFormatter.
+     * @param timeZone     the time zone to format the objects in, or null to format them as they are.
+     */
+    public TemporalResolver(String formatString, TimeZone timeZone) {
+        if (!isSupported()) {
+            throw new DocxStamperException("java.time is not supported by this JVM. It requires Java 8 or later.");
+        }
+        this.formatString = formatString;
+        try {
+            Object formatter = dateTimeFormatterClass.getMethod("ofPattern", String.class).invoke(null, formatString);
+            if (timeZone != null) {
+                // unlike ZoneId.of(), toZoneId() also understands the short ids of TimeZone (like "PST")
+                Object zoneId = toZoneIdMethod.invoke(timeZone);
+                formatter = dateTimeFormatterClass.getMethod("withZone", zoneIdClass).invoke(formatter, zoneId);
+            }
+            this.formatter = formatter;
+            this.formatMethod = dateTimeFormatterClass.getMethod("format", findClass("java.time.temporal.TemporalAccessor"));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new DocxStamperException(e);
+        } catch (InvocationTargetException e) {
+            throw new DocxStamperException(e.getCause());
+        }
+    }
+
+    @Override
+    protected String resolveStringForObject(Object temporal) {
+        try {
+            return (String) formatMethod.invoke(formatter, temporal);
+        } catch (IllegalAccessException e) {
+            throw new DocxStamperException(e);
+        } catch (InvocationTargetException e) {
+            throw new DocxStamperException("Error while formatting " + temporal + " with format " + formatString, e.getCause());
+        }
+    }
+
+    public String getFormatString() {
+        return formatString;
+    }
+
+    /**
+     * @return true if the running JVM supports java.time (Java 8 or later).
+     */
+    public static boolean isSupported() {
+        return dateTimeFormatterClass != null;
+    }
+
+    /**
+     * @param classNames the fully qualified names of classes.
+     * @return those of the given classes that are available in the running JVM.
+     */
+    public static List<Class<?>> findClasses(String... classNames) {
+        List<Class<?>> classes = new ArrayList<>();
+        for (String className : classNames) {
+            Class<?> type = findClass(className);
+            if (type != null) {
+                classes.add(type);
+            }
+        }
+        return Collections.unmodifiableList(classes);
+    }
+
+    /**
+     * @return the given date as java.time.Instant. Requires Java 8 or later.
+     */
+    static Object toInstant(Date date) {
+        try {
+            return dateToInstantMethod.invoke(date);
+        } catch (IllegalAccessException e) {
+            throw new DocxStamperException(e);
+        } catch (InvocationTargetException e) {
+            throw new DocxStamperException(e.getCause());
+        }
+    }
+
+    private static Method findMethod(Class<?> type, String name) {
+        try {
+            return type.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static Class<?> findClass(String className) {
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+}
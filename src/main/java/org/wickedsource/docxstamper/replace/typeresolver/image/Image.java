@@ -1,29 +1,62 @@
 package org.wickedsource.docxstamper.replace.typeresolver.image;
 
 import org.apache.commons.io.IOUtils;
+import org.wickedsource.docxstamper.api.DocxStamperException;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
+/**
+ * An image to be put into a document. The content of an image is either held in memory or read from an
+ * {@link ImageSource} (like a file) when the image is put into a document. A source is read at most once per
+ * document: its content is then held by the image part of that document until the document is no longer used, but
+ * not by the Image, so the same Image may be stamped into any number of documents without keeping its content.
+ */
 public class Image {
 
     private byte[] imageBytes;
 
+    private ImageSource imageSource;
+
+    private Path path;
+
     private String filename;
 
     private String altText;
 
     public Image(InputStream in) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        IOUtils.copy(in, out);
-        this.imageBytes = out.toByteArray();
+        this.imageBytes = IOUtils.toByteArray(in);
     }
 
     public Image(byte[] imageBytes) {
         this.imageBytes = imageBytes;
     }
 
+    /**
+     * Creates an image whose content is read from the given source only when the image is put into a document, once
+     * for each document.
+     */
+    public Image(ImageSource imageSource) {
+        this.imageSource = imageSource;
+    }
+
+    /**
+     * Creates an image whose content is read from the given file only when the image is put into a document, once
+     * for each document. The file name is used as filename of the image.
+     */
+    public Image(final Path path) {
+        this(new ImageSource() {
+            @Override
+            public InputStream openStream() throws IOException {
+                return Files.newInputStream(path);
+            }
+        });
+        this.path = path;
+        this.filename = path.getFileName().toString();
+    }
+
     public String getFilename() {
         return filename;
     }
@@ -40,11 +73,32 @@ public class Image {
         this.altText = altText;
     }
 
+    /**
+     * @return what the content of this image is read from: the file or the {@link ImageSource} it has been created
+     * with, null if the content is held in memory. Images with the same source are read only once per document.
+     */
+    Object getSource() {
+        return path != null ? path : imageSource;
+    }
+
+    /**
+     * @return the content of this image. If this image is backed by an {@link ImageSource}, the content is read from
+     * the source on each call and not kept by this image.
+     */
     public byte[] getImageBytes() {
-        return imageBytes;
+        if (imageBytes != null || imageSource == null) {
+            return imageBytes;
+        }
+        try (InputStream in = imageSource.openStream()) {
+            return IOUtils.toByteArray(in);
+        } catch (IOException e) {
+            throw new DocxStamperException("Error while reading image!", e);
+        }
     }
 
     public void setImageBytes(byte[] imageBytes) {
         this.imageBytes = imageBytes;
+        this.imageSource = null;
+        this.path = null;
     }
 }
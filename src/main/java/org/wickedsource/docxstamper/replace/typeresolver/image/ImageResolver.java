@@ -1,42 +1,132 @@
 package org.wickedsource.docxstamper.replace.typeresolver.image;
 
+import org.apache.xmlgraphics.image.loader.ImageInfo;
 import org.docx4j.dml.wordprocessingDrawing.Inline;
 import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.Part;
 import org.docx4j.openpackaging.parts.WordprocessingML.BinaryPartAbstractImage;
+import org.docx4j.openpackaging.parts.relationships.RelationshipsPart;
 import org.docx4j.wml.R;
 import org.wickedsource.docxstamper.api.DocxStamperException;
 import org.wickedsource.docxstamper.api.typeresolver.ITypeResolver;
+import org.wickedsource.docxstamper.replace.typeresolver.image.PreparedImageCache.PreparedImage;
+import org.wickedsource.docxstamper.util.DrawingIdAllocator;
 
-import java.util.Random;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * This ITypeResolver allows context objects to return objects of type Image. An expression that resolves to an Image
  * object will be replaced by an actual image in the resulting .docx document. The image will be put as an inline into
- * the surrounding paragraph of text.
+ * the surrounding paragraph of text. Images with the same content are embedded only once per document, further
+ * occurrences refer to the same image part. Images are probed only once across all documents stamped with the same
+ * {@link PreparedImageCache} (see DocxStamperConfiguration.setPreparedImageCache()).
  */
 public class ImageResolver implements ITypeResolver {
 
-    private static Random random = new Random();
+    /**
+     * Key of the user data of a document that holds its image parts by the SHA-256 digest of their content. The parts
+     * refer to their document, so they are kept with the document rather than in a map of this class.
+     */
+    private static final String IMAGE_PARTS_KEY = ImageResolver.class.getName() + ".imageParts";
+
+    /**
+     * Key of the user data of a document that holds its image parts by the source they have been read from (see
+     * {@link Image#getSource()}).
+     */
+    private static final String SOURCE_PARTS_KEY = ImageResolver.class.getName() + ".sourceParts";
+
+    private final PreparedImageCache preparedImages;
+
+    public ImageResolver() {
+        this(new PreparedImageCache());
+    }
+
+    /**
+     * @param preparedImages the cache of prepared images, so that an image stamped into many documents (like a logo or
+     *                       a signature) only has to be probed for its format and dimensions once. May be shared with
+     *                       other ImageResolvers.
+     */
+    public ImageResolver(PreparedImageCache preparedImages) {
+        this.preparedImages = preparedImages;
+    }
 
     @Override
     public R resolve(WordprocessingMLPackage document, Object image) {
         try {
-            // TODO: adding the same image twice will put the image twice into the docx-zip file. make the second
-            //       addition of the same image a reference instead.
             Image img = (Image) image;
-            return createRunWithImage(document, img.getImageBytes(), img.getFilename(), img.getAltText());
+            BinaryPartAbstractImage imagePart;
+            if (img.getSource() != null) {
+                imagePart = getImagePart(document, img, preparedImages);
+            } else {
+                imagePart = addImage(document, img.getImageBytes(), preparedImages);
+            }
+            return createRun(document, imagePart, img.getFilename(), img.getAltText());
         } catch (Exception e) {
             throw new DocxStamperException("Error while adding image to document!", e);
         }
     }
 
+    /**
+     * Creates a run holding the given image. The image is probed for its format and dimensions unless it has been
+     * added to the document before.
+     */
     public static R createRunWithImage(WordprocessingMLPackage wordMLPackage, byte[] bytes, String filenameHint, String altText) throws Exception {
-        BinaryPartAbstractImage imagePart = BinaryPartAbstractImage.createImagePart(wordMLPackage, bytes);
+        return createRun(wordMLPackage, addImage(wordMLPackage, bytes, null), filenameHint, altText);
+    }
 
-        // creating random ids assuming they are unique
-        // id must not be too large, otherwise Word cannot open the document
-        int id1 = random.nextInt(100000);
-        int id2 = random.nextInt(100000);
+    /**
+     * Returns the image part of an image that is read from a source, reading the source only if nothing has been read
+     * from it for this document yet. An image that appears many times in a document (like a logo in a repeated row)
+     * is thus read and hashed once.
+     */
+    private static BinaryPartAbstractImage getImagePart(WordprocessingMLPackage wordMLPackage, Image image,
+                                                        PreparedImageCache preparedImages) throws Exception {
+        SourcePart sourcePart;
+        synchronized (wordMLPackage) {
+            @SuppressWarnings("unchecked")
+            Map<Object, SourcePart> sourceParts = (Map<Object, SourcePart>) wordMLPackage.getUserData(SOURCE_PARTS_KEY);
+            if (sourceParts == null) {
+                sourceParts = new HashMap<>();
+                wordMLPackage.setUserData(SOURCE_PARTS_KEY, sourceParts);
+            }
+            sourcePart = sourceParts.get(image.getSource());
+            if (sourcePart == null) {
+                sourcePart = new SourcePart();
+                sourceParts.put(image.getSource(), sourcePart);
+            }
+        }
+        // the source is read without holding the lock on the document, parts of the document stamped concurrently
+        // only wait for each other if they read the same source
+        synchronized (sourcePart) {
+            if (sourcePart.imagePart == null) {
+                sourcePart.imagePart = addImage(wordMLPackage, image.getImageBytes(), preparedImages);
+            }
+            return sourcePart.imagePart;
+        }
+    }
+
+    private static BinaryPartAbstractImage addImage(WordprocessingMLPackage wordMLPackage, byte[] bytes,
+                                                    PreparedImageCache preparedImages) throws Exception {
+        // hashed before taking the lock, so that concurrently stamped parts of the document only wait for each other
+        // while adding parts
+        ByteBuffer digest = ByteBuffer.wrap(digest(bytes));
+        // adding a part is not thread-safe, and the parts of a document may be stamped concurrently
+        synchronized (wordMLPackage) {
+            return getImagePart(wordMLPackage, bytes, digest, preparedImages);
+        }
+    }
+
+    private static R createRun(WordprocessingMLPackage wordMLPackage, BinaryPartAbstractImage imagePart, String filenameHint,
+                               String altText) throws Exception {
+        // ids continue after the highest id in use in the template, so they are unique and the same on each run
+        DrawingIdAllocator drawingIds = DrawingIdAllocator.forDocument(wordMLPackage);
+        int id1 = drawingIds.nextId();
+        int id2 = drawingIds.nextId();
         if (filenameHint == null) {
             filenameHint = "dummyFileName";
         }
@@ -44,8 +134,11 @@ public class ImageResolver implements ITypeResolver {
             altText = "dummyAltText";
         }
 
-        Inline inline = imagePart.createImageInline(filenameHint, altText,
-                id1, id2, false);
+        Inline inline;
+        synchronized (wordMLPackage) {
+            inline = imagePart.createImageInline(filenameHint, altText,
+                    id1, id2, false);
+        }
 
         // Now add the inline in w:p/w:r/w:drawing
         org.docx4j.wml.ObjectFactory factory = new org.docx4j.wml.ObjectFactory();
@@ -58,4 +151,89 @@ public class ImageResolver implements ITypeResolver {
 
     }
 
+    /**
+     * Returns the image part with the given content, adding it to the document if it has not been added before.
+     * Must be called while holding the lock on the document.
+     *
+     * @param digest         the SHA-256 digest of the given content.
+     * @param preparedImages the cache of prepared images to use, null to probe each image added.
+     */
+    private static BinaryPartAbstractImage getImagePart(WordprocessingMLPackage wordMLPackage, byte[] bytes, ByteBuffer digest,
+                                                        PreparedImageCache preparedImages) throws Exception {
+        @SuppressWarnings("unchecked")
+        Map<ByteBuffer, BinaryPartAbstractImage> imageParts =
+                (Map<ByteBuffer, BinaryPartAbstractImage>) wordMLPackage.getUserData(IMAGE_PARTS_KEY);
+        if (imageParts == null) {
+            imageParts = new HashMap<>();
+            wordMLPackage.setUserData(IMAGE_PARTS_KEY, imageParts);
+        }
+        BinaryPartAbstractImage imagePart = imageParts.get(digest);
+        if (imagePart == null) {
+            PreparedImage preparedImage = preparedImages != null ? preparedImages.get(digest) : null;
+            if (preparedImage != null) {
+                imagePart = createImagePart(wordMLPackage, preparedImage, bytes);
+            } else {
+                imagePart = BinaryPartAbstractImage.createImagePart(wordMLPackage, bytes);
+                if (preparedImages != null) {
+                    // only keep the image data if docx4j had to convert it, the cache should not pin large images
+                    byte[] embeddedBytes = imagePart.getBytes();
+                    preparedImages.put(digest, new PreparedImage(imagePart.getContentType(), imagePart.getPartName().getExtension(),
+                            getImageInfo(imagePart), Arrays.equals(bytes, embeddedBytes) ? null : embeddedBytes));
+                }
+            }
+            imageParts.put(digest, imagePart);
+        }
+        return imagePart;
+    }
+
+    /**
+     * Adds an image part for an already prepared image to the main document part. This does what
+     * BinaryPartAbstractImage.createImagePart() does, without probing the image.
+     */
+    private static BinaryPartAbstractImage createImagePart(WordprocessingMLPackage wordMLPackage, PreparedImage preparedImage, byte[] bytes) throws Exception {
+        Part sourcePart = wordMLPackage.getMainDocumentPart();
+        if (sourcePart.getRelationshipsPart() == null) {
+            RelationshipsPart.createRelationshipsPartForPart(sourcePart);
+        }
+        String proposedRelId = sourcePart.getRelationshipsPart().getNextId();
+        String partName = BinaryPartAbstractImage.createImageName(wordMLPackage, sourcePart, proposedRelId, preparedImage.getExtension());
+        BinaryPartAbstractImage imagePart = (BinaryPartAbstractImage) wordMLPackage.getContentTypeManager()
+                .newPartForContentType(preparedImage.getContentType(), partName, null);
+        imagePart.setBinaryData(preparedImage.getBytes() != null ? preparedImage.getBytes() : bytes);
+        imagePart.getRels().add(sourcePart.addTargetPart(imagePart, proposedRelId));
+        setImageInfo(imagePart, preparedImage.getImageInfo());
+        return imagePart;
+    }
+
+    /**
+     * docx4j deprecates the ImageInfo accessors of an image part, but offers no other way to create an inline for an
+     * image without probing it again, so they are only used by this method and {@link #setImageInfo}.
+     */
+    @SuppressWarnings("deprecation")
+    private static ImageInfo getImageInfo(BinaryPartAbstractImage imagePart) {
+        return imagePart.getImageInfo();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void setImageInfo(BinaryPartAbstractImage imagePart, ImageInfo imageInfo) {
+        imagePart.setImageInfo(imageInfo);
+    }
+
+    private static byte[] digest(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The image part read from a source, null until the source has been read.
+     */
+    private static class SourcePart {
+
+        private BinaryPartAbstractImage imagePart;
+    }
+
 }
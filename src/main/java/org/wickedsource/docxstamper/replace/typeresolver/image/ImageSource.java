@@ -0,0 +1,20 @@
+package org.wickedsource.docxstamper.replace.typeresolver.image;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Provides the content of an {@link Image} that is read lazily, i.e. only when the image is put into a document.
+ */
+public interface ImageSource {
+
+    /**
+     * Opens a new stream to read the image from. The stream is closed by the caller. This method is called once for
+     * each document the image is put into and may be called from several threads at once.
+     *
+     * @return a stream of the image content.
+     * @throws IOException if the stream cannot be opened.
+     */
+    InputStream openStream() throws IOException;
+
+}
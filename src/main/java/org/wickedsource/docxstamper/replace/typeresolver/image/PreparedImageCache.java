@@ -0,0 +1,78 @@
+package org.wickedsource.docxstamper.replace.typeresolver.image;
+
+import java.nio.ByteBuffer;
+
+import org.apache.xmlgraphics.image.loader.ImageInfo;
+import org.wickedsource.docxstamper.util.BoundedCache;
+
+/**
+ * <p>
+ * Bounded cache of prepared images, keyed by the SHA-256 digest of the image content. A prepared image holds
+ * everything docx4j finds out about an image when it is first embedded (content type, file extension and
+ * dimensions), so that embedding the same image into further documents does not have to probe the image
+ * again. The cache may be shared between any number of documents and threads.
+ * </p>
+ * <p>
+ * Lookups are lock-free. When the cache grows beyond its maximum size, the least recently used quarter of the
+ * entries is evicted (see {@link BoundedCache}). A maximum size of 0 disables caching.
+ * </p>
+ */
+public class PreparedImageCache extends BoundedCache<ByteBuffer, PreparedImageCache.PreparedImage> {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 100;
+
+    public PreparedImageCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param maximumSize the maximum number of prepared images to keep. 0 disables caching.
+     */
+    public PreparedImageCache(int maximumSize) {
+        super(maximumSize);
+    }
+
+    /**
+     * An image as prepared by docx4j for embedding. Instances are immutable and shared between documents.
+     */
+    public static class PreparedImage {
+
+        private final String contentType;
+
+        private final String extension;
+
+        private final ImageInfo imageInfo;
+
+        private final byte[] bytes;
+
+        public PreparedImage(String contentType, String extension, ImageInfo imageInfo, byte[] bytes) {
+            this.contentType = contentType;
+            this.extension = extension;
+            this.imageInfo = imageInfo;
+            this.bytes = bytes;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        /**
+         * @return the dimensions and mime type of the image, which docx4j uses to compute the extent of an inline.
+         */
+        public ImageInfo getImageInfo() {
+            return imageInfo;
+        }
+
+        /**
+         * @return the image data as embedded if docx4j had to convert the image to a supported format, null if the
+         * original data is embedded. Must not be modified.
+         */
+        public byte[] getBytes() {
+            return bytes;
+        }
+    }
+}
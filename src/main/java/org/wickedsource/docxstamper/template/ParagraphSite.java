@@ -0,0 +1,164 @@
+package org.wickedsource.docxstamper.template;
+
+import java.util.Arrays;
+
+import org.docx4j.XmlUtils;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.PartName;
+import org.docx4j.wml.ContentAccessor;
+import org.docx4j.wml.P;
+import org.docx4j.wml.Tbl;
+import org.docx4j.wml.Tc;
+import org.docx4j.wml.Tr;
+import org.wickedsource.docxstamper.api.DocxStamperException;
+import org.wickedsource.docxstamper.api.coordinates.ParagraphCoordinates;
+import org.wickedsource.docxstamper.api.coordinates.TableCellCoordinates;
+import org.wickedsource.docxstamper.api.coordinates.TableCoordinates;
+import org.wickedsource.docxstamper.api.coordinates.TableRowCoordinates;
+
+/**
+ * Address of a paragraph within a .docx template that needs to be looked at during stamping, i.e. a paragraph that
+ * contains expressions or that carries a comment. The address is independent of a concrete DOCX4J object tree, so it
+ * can be resolved against any document that was loaded from the same template.
+ */
+public class ParagraphSite {
+
+    /**
+     * The paragraph contains variable expressions or line break placeholders to be replaced.
+     */
+    public static final int PLACEHOLDER = 1;
+
+    /**
+     * A comment starts within the paragraph.
+     */
+    public static final int COMMENT = 1 << 1;
+
+    /**
+     * A comment ends within the paragraph.
+     */
+    public static final int COMMENT_RANGE_END = 1 << 2;
+
+    /**
+     * The paragraph contains processor expressions ("#{...}").
+     */
+    public static final int PROCESSOR_EXPRESSION = 1 << 3;
+
+    private final PartName partName;
+
+    private final int[] path;
+
+    private final int flags;
+
+    /**
+     * @param partName the name of the part (main document, header or footer) containing the paragraph.
+     * @param path     the content indices leading to the paragraph. For each enclosing table the path contains the
+     *                 index of the table, the row and the cell, followed by the index of the paragraph itself.
+     * @param flags    what the paragraph contains, as a combination of PLACEHOLDER, COMMENT, COMMENT_RANGE_END and
+     *                 PROCESSOR_EXPRESSION.
+     */
+    public ParagraphSite(PartName partName, int[] path, int flags) {
+        this.partName = partName;
+        this.path = path;
+        this.flags = flags;
+    }
+
+    /**
+     * Creates the site of the paragraph at the given coordinates.
+     */
+    public static ParagraphSite of(PartName partName, ParagraphCoordinates coordinates, int flags) {
+        int depth = 0;
+        TableCellCoordinates cell = coordinates.getParentTableCellCoordinates();
+        while (cell != null) {
+            depth++;
+            cell = cell.getParentTableRowCoordinates().getParentTableCoordinates().getParentTableCellCoordinates();
+        }
+        int[] path = new int[3 * depth + 1];
+        int i = path.length - 1;
+        path[i] = coordinates.getIndex();
+        cell = coordinates.getParentTableCellCoordinates();
+        while (cell != null) {
+            TableRowCoordinates row = cell.getParentTableRowCoordinates();
+            TableCoordinates table = row.getParentTableCoordinates();
+            path[--i] = cell.getIndex();
+            path[--i] = row.getIndex();
+            path[--i] = table.getIndex();
+            cell = table.getParentTableCellCoordinates();
+        }
+        return new ParagraphSite(partName, path, flags);
+    }
+
+    /**
+     * Looks up the paragraph addressed by this site within the given document.
+     *
+     * @param document a document loaded from the template this site was collected from.
+     * @return the coordinates of the paragraph within the given document.
+     */
+    public ParagraphCoordinates resolve(WordprocessingMLPackage document) {
+        ContentAccessor part = (ContentAccessor) document.getParts().get(partName);
+        if (part == null) {
+            throw new DocxStamperException(String.format("Part %s not found in document!", partName));
+        }
+        ContentAccessor parent = part;
+        TableCellCoordinates cellCoordinates = null;
+        for (int i = 0; i < path.length - 1; i += 3) {
+            Tbl table = (Tbl) XmlUtils.unwrap(parent.getContent().get(path[i]));
+            TableCoordinates tableCoordinates = cellCoordinates == null
+                    ? new TableCoordinates(table, path[i])
+                    : new TableCoordinates(table, path[i], cellCoordinates);
+            Tr row = (Tr) XmlUtils.unwrap(table.getContent().get(path[i + 1]));
+            TableRowCoordinates rowCoordinates = new TableRowCoordinates(row, path[i + 1], tableCoordinates);
+            Tc cell = (Tc) XmlUtils.unwrap(row.getContent().get(path[i + 2]));
+            cellCoordinates = new TableCellCoordinates(cell, path[i + 2], rowCoordinates);
+            parent = cell;
+        }
+        int paragraphIndex = path[path.length - 1];
+        P paragraph = (P) XmlUtils.unwrap(parent.getContent().get(paragraphIndex));
+        return cellCoordinates == null
+                ? new ParagraphCoordinates(paragraph, paragraphIndex)
+                : new ParagraphCoordinates(paragraph, paragraphIndex, cellCoordinates);
+    }
+
+    public PartName getPartName() {
+        return partName;
+    }
+
+    /**
+     * @return the index of the top-level block (the paragraph itself or its outermost table) within the part.
+     */
+    public int getBlockIndex() {
+        return path[0];
+    }
+
+    /**
+     * @return true if the paragraph contains expressions (or line break placeholders) to be replaced.
+     */
+    public boolean hasPlaceholders() {
+        return (flags & PLACEHOLDER) != 0;
+    }
+
+    /**
+     * @return true if a comment starts within the paragraph.
+     */
+    public boolean hasComments() {
+        return (flags & COMMENT) != 0;
+    }
+
+    /**
+     * @return true if a comment starts or ends within the paragraph.
+     */
+    public boolean hasCommentRanges() {
+        return (flags & (COMMENT | COMMENT_RANGE_END)) != 0;
+    }
+
+    /**
+     * @return true if the paragraph contains processor expressions ("#{...}").
+     */
+    public boolean hasProcessorExpressions() {
+        return (flags & PROCESSOR_EXPRESSION) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[ParagraphSite: part=%s; path=%s; flags=%s]", partName, Arrays.toString(path), Integer.toBinaryString(flags));
+    }
+}
@@ -0,0 +1,119 @@
+package org.wickedsource.docxstamper.template;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.docx4j.XmlUtils;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.wml.CommentRangeEnd;
+import org.docx4j.wml.CommentRangeStart;
+import org.docx4j.wml.Comments;
+import org.wickedsource.docxstamper.api.coordinates.ParagraphCoordinates;
+import org.wickedsource.docxstamper.util.CommentUtil;
+import org.wickedsource.docxstamper.util.CommentWrapper;
+
+/**
+ * The sites of a {@link SiteTable} bound to one concrete document, together with the comment ranges found within
+ * these sites. The stamping phases (expression replacement and comment processing) consume this table instead of
+ * walking the document themselves.
+ */
+public class ResolvedSiteTable {
+
+    private final WordprocessingMLPackage document;
+
+    private final List<ParagraphSite> sites = new ArrayList<>();
+
+    private final List<ParagraphCoordinates> coordinates = new ArrayList<>();
+
+    private final Map<BigInteger, CommentRangeStart> commentRangeStarts = new LinkedHashMap<>();
+
+    private final Map<BigInteger, CommentRangeEnd> commentRangeEnds = new HashMap<>();
+
+    private Map<BigInteger, Comments.Comment> commentsById;
+
+    private Map<BigInteger, CommentWrapper> comments;
+
+    private int maxDrawingId;
+
+    public ResolvedSiteTable(WordprocessingMLPackage document) {
+        this.document = document;
+    }
+
+    /**
+     * Adds a site together with the coordinates of its paragraph within the document of this table.
+     */
+    public void add(ParagraphSite site, ParagraphCoordinates paragraphCoordinates) {
+        sites.add(site);
+        coordinates.add(paragraphCoordinates);
+        if (site.hasCommentRanges()) {
+            for (Object contentElement : paragraphCoordinates.getParagraph().getContent()) {
+                Object unwrapped = XmlUtils.unwrap(contentElement);
+                if (unwrapped instanceof CommentRangeStart) {
+                    commentRangeStarts.put(((CommentRangeStart) unwrapped).getId(), (CommentRangeStart) unwrapped);
+                } else if (unwrapped instanceof CommentRangeEnd) {
+                    commentRangeEnds.put(((CommentRangeEnd) unwrapped).getId(), (CommentRangeEnd) unwrapped);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return sites.size();
+    }
+
+    public ParagraphSite getSite(int index) {
+        return sites.get(index);
+    }
+
+    public ParagraphCoordinates getCoordinates(int index) {
+        return coordinates.get(index);
+    }
+
+    /**
+     * @return the highest id of the drawing objects (like images) within the document before stamping, 0 if there
+     * are none.
+     */
+    public int getMaxDrawingId() {
+        return maxDrawingId;
+    }
+
+    public void setMaxDrawingId(int maxDrawingId) {
+        this.maxDrawingId = maxDrawingId;
+    }
+
+    /**
+     * @return the comments of the document by their id.
+     */
+    public Map<BigInteger, Comments.Comment> getCommentsById() {
+        if (commentsById == null) {
+            commentsById = CommentUtil.getCommentsById(document);
+        }
+        return commentsById;
+    }
+
+    /**
+     * @return the comments whose ranges have been found within the sites of this table, by their id.
+     */
+    public Map<BigInteger, CommentWrapper> getComments() {
+        if (comments == null) {
+            Map<BigInteger, CommentWrapper> wrappers = new HashMap<>();
+            for (Map.Entry<BigInteger, CommentRangeStart> entry : commentRangeStarts.entrySet()) {
+                BigInteger id = entry.getKey();
+                wrappers.put(id, new CommentWrapper(getCommentsById().get(id), entry.getValue(), commentRangeEnds.get(id)));
+            }
+            for (Map.Entry<BigInteger, CommentRangeEnd> entry : commentRangeEnds.entrySet()) {
+                BigInteger id = entry.getKey();
+                if (!wrappers.containsKey(id)) {
+                    wrappers.put(id, new CommentWrapper(getCommentsById().get(id), null, entry.getValue()));
+                }
+            }
+            comments = Collections.unmodifiableMap(wrappers);
+        }
+        return comments;
+    }
+}
@@ -0,0 +1,106 @@
+package org.wickedsource.docxstamper.template;
+
+import org.docx4j.XmlUtils;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.Part;
+import org.docx4j.openpackaging.parts.PartName;
+import org.docx4j.wml.CommentRangeEnd;
+import org.docx4j.wml.CommentRangeStart;
+import org.docx4j.wml.P;
+import org.wickedsource.docxstamper.api.coordinates.ParagraphCoordinates;
+import org.wickedsource.docxstamper.el.ExpressionMatch;
+import org.wickedsource.docxstamper.el.ExpressionUtil;
+import org.wickedsource.docxstamper.util.DrawingIdAllocator;
+import org.wickedsource.docxstamper.util.ParagraphWrapper;
+import org.wickedsource.docxstamper.util.RunUtil;
+import org.wickedsource.docxstamper.util.walk.BaseCoordinatesWalker;
+
+/**
+ * Walks a .docx template once and collects the {@link SiteTable} of all paragraphs that contain expressions or
+ * comment ranges. Along the way the sites are bound to the walked document, so that stamping the walked document
+ * itself needs no further traversal (see {@link #collectResolved()}).
+ */
+public class SiteCollector extends BaseCoordinatesWalker {
+
+    private final ExpressionUtil expressionUtil = new ExpressionUtil();
+
+    private final String lineBreakPlaceholder;
+
+    private final SiteTable sites = new SiteTable();
+
+    private final ResolvedSiteTable resolvedSites;
+
+    private PartName currentPartName;
+
+    private int maxDrawingId;
+
+    /**
+     * @param document             the template to collect the sites from.
+     * @param lineBreakPlaceholder the line break placeholder of the stamper the template is collected for (may be
+     *                             null).
+     */
+    public SiteCollector(WordprocessingMLPackage document, String lineBreakPlaceholder) {
+        super(document);
+        this.lineBreakPlaceholder = lineBreakPlaceholder;
+        this.resolvedSites = new ResolvedSiteTable(document);
+    }
+
+    /**
+     * Walks the document and returns the collected sites.
+     */
+    public SiteTable collect() {
+        walk();
+        sites.setMaxDrawingId(maxDrawingId);
+        return sites;
+    }
+
+    /**
+     * Walks the document and returns the collected sites bound to the walked document.
+     */
+    public ResolvedSiteTable collectResolved() {
+        walk();
+        resolvedSites.setMaxDrawingId(maxDrawingId);
+        return resolvedSites;
+    }
+
+    @Override
+    protected void onPart(Part part) {
+        this.currentPartName = part.getPartName();
+    }
+
+    @Override
+    protected void onParagraph(ParagraphCoordinates paragraphCoordinates) {
+        P paragraph = paragraphCoordinates.getParagraph();
+        maxDrawingId = Math.max(maxDrawingId, DrawingIdAllocator.getMaxDrawingId(paragraph));
+        int flags = getCommentRangeFlags(paragraph);
+        boolean lineBreaks = lineBreakPlaceholder != null && !lineBreakPlaceholder.isEmpty()
+                && RunUtil.containsChar(paragraph, lineBreakPlaceholder.charAt(0));
+        if (lineBreaks || RunUtil.containsChar(paragraph, '$') || RunUtil.containsChar(paragraph, '#')) {
+            String text = new ParagraphWrapper(paragraph).getText();
+            for (ExpressionMatch match : expressionUtil.findExpressions(text)) {
+                flags |= match.isProcessorExpression() ? ParagraphSite.PROCESSOR_EXPRESSION : ParagraphSite.PLACEHOLDER;
+            }
+            if (lineBreaks && text.contains(lineBreakPlaceholder)) {
+                flags |= ParagraphSite.PLACEHOLDER;
+            }
+        }
+        if (flags != 0) {
+            ParagraphSite site = ParagraphSite.of(currentPartName, paragraphCoordinates, flags);
+            sites.add(site);
+            resolvedSites.add(site, paragraphCoordinates);
+        }
+    }
+
+    private int getCommentRangeFlags(P paragraph) {
+        int flags = 0;
+        for (Object contentElement : paragraph.getContent()) {
+            Object unwrapped = XmlUtils.unwrap(contentElement);
+            if (unwrapped instanceof CommentRangeStart) {
+                flags |= ParagraphSite.COMMENT;
+            } else if (unwrapped instanceof CommentRangeEnd) {
+                flags |= ParagraphSite.COMMENT_RANGE_END;
+            }
+        }
+        return flags;
+    }
+}
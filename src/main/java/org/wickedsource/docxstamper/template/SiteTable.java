@@ -0,0 +1,68 @@
+package org.wickedsource.docxstamper.template;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.PartName;
+
+/**
+ * The paragraphs of a .docx template that need to be processed during stamping, in document order (headers, main
+ * document, footers). Paragraphs that contain neither expressions nor comment ranges are not part of the table.
+ */
+public class SiteTable {
+
+    private final List<ParagraphSite> sites = new ArrayList<>();
+
+    private int maxDrawingId;
+
+    public void add(ParagraphSite site) {
+        sites.add(site);
+    }
+
+    public List<ParagraphSite> getSites() {
+        return Collections.unmodifiableList(sites);
+    }
+
+    public int size() {
+        return sites.size();
+    }
+
+    /**
+     * @return the highest id of the drawing objects (like images) within the template, 0 if there are none.
+     */
+    public int getMaxDrawingId() {
+        return maxDrawingId;
+    }
+
+    public void setMaxDrawingId(int maxDrawingId) {
+        this.maxDrawingId = maxDrawingId;
+    }
+
+    /**
+     * Binds the sites of this table to the given document.
+     *
+     * @param document a document loaded from the template this table was collected from.
+     */
+    public ResolvedSiteTable resolve(WordprocessingMLPackage document) {
+        return resolve(document, null);
+    }
+
+    /**
+     * Binds the sites of this table that lie within the given part to the given document.
+     *
+     * @param document a document loaded from the template this table was collected from.
+     * @param partName the part whose sites to bind, or null to bind the sites of all parts.
+     */
+    public ResolvedSiteTable resolve(WordprocessingMLPackage document, PartName partName) {
+        ResolvedSiteTable resolved = new ResolvedSiteTable(document);
+        resolved.setMaxDrawingId(maxDrawingId);
+        for (ParagraphSite site : sites) {
+            if (partName == null || partName.equals(site.getPartName())) {
+                resolved.add(site, site.resolve(document));
+            }
+        }
+        return resolved;
+    }
+}
@@ -0,0 +1,177 @@
+package org.wickedsource.docxstamper.util;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.bind.JAXBElement;
+
+import org.docx4j.XmlUtils;
+import org.docx4j.openpackaging.exceptions.Docx4JException;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.Part;
+import org.docx4j.openpackaging.parts.WordprocessingML.CommentsPart;
+import org.docx4j.wml.CTMarkup;
+import org.docx4j.wml.CommentRangeEnd;
+import org.docx4j.wml.CommentRangeStart;
+import org.docx4j.wml.Comments;
+import org.docx4j.wml.ContentAccessor;
+import org.docx4j.wml.R;
+import org.docx4j.wml.SdtElement;
+
+/**
+ * Hands out the ids of bookmarks (w:bookmarkStart and w:bookmarkEnd) and comments (w:commentRangeStart,
+ * w:commentRangeEnd and w:commentReference) within content that is copied within a document, like the sections of a
+ * merged document. Word requires these ids to be unique within a document. The allocator of a document is kept in the
+ * user data of the document, so it goes away with the document.
+ */
+public class AnnotationIdAllocator {
+
+    private static final String USER_DATA_KEY = AnnotationIdAllocator.class.getName();
+
+    private static final String BOOKMARK_START = "bookmarkStart";
+
+    private static final String BOOKMARK_END = "bookmarkEnd";
+
+    private final WordprocessingMLPackage document;
+
+    private BigInteger lastBookmarkId;
+
+    private AnnotationIdAllocator(WordprocessingMLPackage document, BigInteger lastBookmarkId) {
+        this.document = document;
+        this.lastBookmarkId = lastBookmarkId;
+    }
+
+    /**
+     * Returns the allocator of the given document. On the first call, all parts of the document are searched for the
+     * bookmark ids in use, so content that is not part of the document at that time (like the sections of a merged
+     * document collected outside of it) must only contain ids that are handed out by the allocator.
+     */
+    public static AnnotationIdAllocator forDocument(WordprocessingMLPackage document) {
+        synchronized (document) {
+            AnnotationIdAllocator allocator = (AnnotationIdAllocator) document.getUserData(USER_DATA_KEY);
+            if (allocator == null) {
+                allocator = new AnnotationIdAllocator(document, findMaxBookmarkId(document));
+                document.setUserData(USER_DATA_KEY, allocator);
+            }
+            return allocator;
+        }
+    }
+
+    /**
+     * Gives the bookmarks and comments within the given content new ids, so that a copy of content does not share
+     * them with the original. Start, end and reference of a bookmark or comment get the same new id. Each comment is
+     * copied within the comments part of the document under its new id.
+     *
+     * @param content the copied content, must be part of the document of this allocator.
+     * @throws Docx4JException if the comments of the document cannot be read.
+     */
+    public void reassignIds(ContentAccessor content) throws Docx4JException {
+        CommentsPart commentsPart = document.getMainDocumentPart().getCommentsPart();
+        BigInteger lastCommentId = BigInteger.valueOf(-1);
+        if (commentsPart != null) {
+            for (Comments.Comment comment : commentsPart.getContents().getComment()) {
+                if (comment.getId() != null) {
+                    lastCommentId = lastCommentId.max(comment.getId());
+                }
+            }
+        }
+        IdMapper bookmarkIds = new IdMapper(lastBookmarkId, true);
+        IdMapper commentIds = new IdMapper(lastCommentId, true);
+        visit(content.getContent(), bookmarkIds, commentIds);
+        lastBookmarkId = bookmarkIds.lastId;
+
+        if (commentsPart != null && !commentIds.newIds.isEmpty()) {
+            Map<BigInteger, Comments.Comment> commentsById = CommentUtil.getCommentsById(document);
+            for (Map.Entry<BigInteger, BigInteger> entry : commentIds.newIds.entrySet()) {
+                Comments.Comment comment = commentsById.get(entry.getKey());
+                if (comment != null) {
+                    Comments.Comment copy = XmlUtils.deepCopy(comment);
+                    copy.setId(entry.getValue());
+                    commentsPart.getContents().getComment().add(copy);
+                }
+            }
+        }
+    }
+
+    private static BigInteger findMaxBookmarkId(WordprocessingMLPackage document) {
+        IdMapper bookmarkIds = new IdMapper(BigInteger.valueOf(-1), false);
+        IdMapper commentIds = new IdMapper(BigInteger.valueOf(-1), false);
+        for (Part part : document.getParts().getParts().values()) {
+            // the main document part, headers and footers
+            if (part instanceof ContentAccessor) {
+                visit(((ContentAccessor) part).getContent(), bookmarkIds, commentIds);
+            }
+        }
+        return bookmarkIds.lastId;
+    }
+
+    /**
+     * Passes the ids of the bookmarks and comments within the given content through the given mappers.
+     */
+    private static void visit(List<Object> content, IdMapper bookmarkIds, IdMapper commentIds) {
+        for (Object element : content) {
+            if (element instanceof JAXBElement) {
+                String name = ((JAXBElement<?>) element).getName().getLocalPart();
+                Object value = ((JAXBElement<?>) element).getValue();
+                // moves and other ranges share the classes of bookmarks, so bookmarks are told apart by their name
+                if ((BOOKMARK_START.equals(name) || BOOKMARK_END.equals(name)) && value instanceof CTMarkup) {
+                    CTMarkup bookmark = (CTMarkup) value;
+                    bookmark.setId(bookmarkIds.map(bookmark.getId()));
+                    continue;
+                }
+            }
+            Object unwrapped = XmlUtils.unwrap(element);
+            if (unwrapped instanceof CommentRangeStart) {
+                CommentRangeStart start = (CommentRangeStart) unwrapped;
+                start.setId(commentIds.map(start.getId()));
+            } else if (unwrapped instanceof CommentRangeEnd) {
+                CommentRangeEnd end = (CommentRangeEnd) unwrapped;
+                end.setId(commentIds.map(end.getId()));
+            } else if (unwrapped instanceof R.CommentReference) {
+                R.CommentReference reference = (R.CommentReference) unwrapped;
+                reference.setId(commentIds.map(reference.getId()));
+            } else if (unwrapped instanceof ContentAccessor) {
+                visit(((ContentAccessor) unwrapped).getContent(), bookmarkIds, commentIds);
+            } else if (unwrapped instanceof SdtElement && ((SdtElement) unwrapped).getSdtContent() != null) {
+                visit(((SdtElement) unwrapped).getSdtContent().getContent(), bookmarkIds, commentIds);
+            }
+        }
+    }
+
+    /**
+     * Maps the ids found in copied content to new ids, giving all occurrences of an id the same new id. A mapper that
+     * does not reassign ids keeps them and only records the highest one.
+     */
+    private static class IdMapper {
+
+        private final Map<BigInteger, BigInteger> newIds = new HashMap<>();
+
+        private final boolean reassign;
+
+        private BigInteger lastId;
+
+        private IdMapper(BigInteger lastId, boolean reassign) {
+            this.lastId = lastId;
+            this.reassign = reassign;
+        }
+
+        private BigInteger map(BigInteger id) {
+            if (id == null) {
+                return null;
+            }
+            if (!reassign) {
+                lastId = lastId.max(id);
+                return id;
+            }
+            BigInteger newId = newIds.get(id);
+            if (newId == null) {
+                lastId = lastId.add(BigInteger.ONE);
+                newId = lastId;
+                newIds.put(id, newId);
+            }
+            return newId;
+        }
+    }
+}
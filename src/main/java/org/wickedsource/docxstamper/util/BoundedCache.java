@@ -0,0 +1,167 @@
+package org.wickedsource.docxstamper.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Bounded cache that may be shared between any number of threads. Lookups are lock-free. When the cache grows beyond
+ * its maximum size, the least recently used quarter of the entries is evicted. A maximum size of 0 disables caching.
+ * </p>
+ * <p>
+ * Recency is measured in misses rather than by a clock, so that hits, which are expected to be the common case, only
+ * read shared state.
+ * </p>
+ *
+ * @param <K> the type of the keys, which must implement equals() and hashCode().
+ * @param <V> the type of the cached values.
+ */
+public class BoundedCache<K, V> {
+
+    private final int maximumSize;
+
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maximumSize the maximum number of entries to keep. 0 disables caching.
+     */
+    public BoundedCache(int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("maximumSize must not be negative!");
+        }
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * @param key the key to look up.
+     * @return the value cached for the given key or null if there is none.
+     */
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null) {
+            hits.incrementAndGet();
+            entry.touch(misses.get());
+            return entry.value;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Puts the given value into the cache, replacing any value cached for the same key.
+     *
+     * @param key   the key to cache the value for.
+     * @param value the value to cache.
+     */
+    public void put(K key, V value) {
+        if (maximumSize > 0) {
+            entries.put(key, new Entry<>(value, misses.get()));
+            if (entries.size() > maximumSize) {
+                evict();
+            }
+        }
+    }
+
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            // another thread is already making room
+            return;
+        }
+        try {
+            List<Map.Entry<K, Entry<V>>> snapshot = new ArrayList<>(entries.entrySet());
+            int toEvict = snapshot.size() - (maximumSize - maximumSize / 4);
+            if (toEvict <= 0) {
+                return;
+            }
+            Collections.sort(snapshot, new Comparator<Map.Entry<K, Entry<V>>>() {
+                @Override
+                public int compare(Map.Entry<K, Entry<V>> e1, Map.Entry<K, Entry<V>> e2) {
+                    long a1 = e1.getValue().lastAccess;
+                    long a2 = e2.getValue().lastAccess;
+                    return a1 < a2 ? -1 : (a1 == a2 ? 0 : 1);
+                }
+            });
+            for (int i = 0; i < toEvict; i++) {
+                Map.Entry<K, Entry<V>> eldest = snapshot.get(i);
+                if (entries.remove(eldest.getKey(), eldest.getValue())) {
+                    evictions.incrementAndGet();
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Removes all entries. The hit and miss counters are not reset.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of entries currently cached.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return the number of lookups that were answered from the cache.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that found nothing in the cache.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of entries that have been evicted because the cache was full.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+
+        private volatile long lastAccess;
+
+        private Entry(V value, long lastAccess) {
+            this.value = value;
+            this.lastAccess = lastAccess;
+        }
+
+        private void touch(long tick) {
+            // only write if needed so that hot entries are not written by all threads all the time
+            if (lastAccess != tick) {
+                lastAccess = tick;
+            }
+        }
+    }
+}
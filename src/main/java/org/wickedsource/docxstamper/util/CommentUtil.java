@@ -6,7 +6,6 @@ import java.util.Map;
 
 import org.docx4j.XmlUtils;
 import org.docx4j.openpackaging.exceptions.Docx4JException;
-import org.docx4j.openpackaging.exceptions.InvalidFormatException;
 import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
 import org.docx4j.openpackaging.parts.PartName;
 import org.docx4j.openpackaging.parts.WordprocessingML.CommentsPart;
@@ -17,16 +16,12 @@ import org.docx4j.wml.ContentAccessor;
 import org.docx4j.wml.P;
 import org.docx4j.wml.R;
 import org.jvnet.jaxb2_commons.ppp.Child;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.wickedsource.docxstamper.api.DocxStamperException;
 import org.wickedsource.docxstamper.util.walk.BaseDocumentWalker;
 import org.wickedsource.docxstamper.util.walk.DocumentWalker;
 
 public class CommentUtil {
 
-	private static Logger logger = LoggerFactory.getLogger(CommentUtil.class);
-
 	private CommentUtil() {
 
 	}
@@ -39,57 +34,51 @@ public class CommentUtil {
 	 */
 	public static Comments.Comment getCommentAround(R run,
 			WordprocessingMLPackage document) {
-		try {
-			if (run instanceof Child) {
-				Child child = (Child) run;
-				ContentAccessor parent = (ContentAccessor) child.getParent();
-				if (parent == null)
-					return null;
-				CommentRangeStart possibleComment = null;
-				boolean foundChild = false;
-				for (Object contentElement : parent.getContent()) {
-
-					// so first we look for the start of the comment
-					if (XmlUtils.unwrap(contentElement) instanceof CommentRangeStart) {
-						possibleComment = (CommentRangeStart) contentElement;
-					}
-					// then we check if the child we are looking for is ours
-					else if (possibleComment != null && child.equals(contentElement)) {
-						foundChild = true;
-					}
-					// and then if we have an end of a comment we are good!
-					else if (possibleComment != null && foundChild && XmlUtils
-							.unwrap(contentElement) instanceof CommentRangeEnd) {
-						try {
-							BigInteger id = possibleComment.getId();
-							CommentsPart commentsPart = (CommentsPart) document.getParts()
-									.get(new PartName("/word/comments.xml"));
-							Comments comments = commentsPart.getContents();
-							for (Comments.Comment comment : comments.getComment()) {
-								if (comment.getId().equals(id)) {
-									return comment;
-								}
-							}
-						}
-						catch (InvalidFormatException e) {
-							logger.warn(String.format(
-									"Error while searching comment. Skipping run %s.",
-									run), e);
-						}
-					}
-					// else restart
-					else {
-						possibleComment = null;
-						foundChild = false;
+		return getCommentAround(run, getCommentsById(document));
+	}
+
+	/**
+	 * Same as getCommentAround(R, WordprocessingMLPackage) except that the comment is looked up in the given
+	 * index of comments instead of the comments part of the document.
+	 * @param run the DOCX4J run whose comment to retrieve.
+	 * @param commentsById the comments of the document, as returned by getCommentsById().
+	 * @return the comment, if found, null otherwise.
+	 */
+	public static Comments.Comment getCommentAround(R run,
+			Map<BigInteger, Comments.Comment> commentsById) {
+		if (run instanceof Child) {
+			Child child = (Child) run;
+			ContentAccessor parent = (ContentAccessor) child.getParent();
+			if (parent == null)
+				return null;
+			CommentRangeStart possibleComment = null;
+			boolean foundChild = false;
+			for (Object contentElement : parent.getContent()) {
+
+				// so first we look for the start of the comment
+				if (XmlUtils.unwrap(contentElement) instanceof CommentRangeStart) {
+					possibleComment = (CommentRangeStart) contentElement;
+				}
+				// then we check if the child we are looking for is ours
+				else if (possibleComment != null && child.equals(contentElement)) {
+					foundChild = true;
+				}
+				// and then if we have an end of a comment we are good!
+				else if (possibleComment != null && foundChild && XmlUtils
+						.unwrap(contentElement) instanceof CommentRangeEnd) {
+					Comments.Comment comment = commentsById.get(possibleComment.getId());
+					if (comment != null) {
+						return comment;
 					}
 				}
+				// else restart
+				else {
+					possibleComment = null;
+					foundChild = false;
+				}
 			}
-			return null;
-		}
-		catch (Docx4JException e) {
-			throw new DocxStamperException(
-					"error accessing the comments of the document!", e);
 		}
+		return null;
 	}
 
 	/**
@@ -106,33 +95,53 @@ public class CommentUtil {
 	 */
 	public static Comments.Comment getCommentFor(ContentAccessor object,
 			WordprocessingMLPackage document) {
+		return getCommentFor(object, getCommentsById(document));
+	}
+
+	/**
+	 * Same as getCommentFor(ContentAccessor, WordprocessingMLPackage) except that the comment is looked up in the
+	 * given index of comments instead of the comments part of the document.
+	 *
+	 * @param object the object whose comment to load.
+	 * @param commentsById the comments of the document, as returned by getCommentsById().
+	 * @return the comment or null if the specified object is not commented.
+	 */
+	public static Comments.Comment getCommentFor(ContentAccessor object,
+			Map<BigInteger, Comments.Comment> commentsById) {
+		for (Object contentObject : object.getContent()) {
+			if (contentObject instanceof CommentRangeStart) {
+				Comments.Comment comment = commentsById.get(((CommentRangeStart) contentObject).getId());
+				if (comment != null) {
+					return comment;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Indexes all comments of the comments.xml part of the given document by their id. Load the index once and
+	 * pass it to getCommentFor() or getCommentAround() to look up many comments.
+	 *
+	 * @param document the document whose comments to index.
+	 * @return the comments by their id. Empty, if the document has no comments.
+	 */
+	public static Map<BigInteger, Comments.Comment> getCommentsById(WordprocessingMLPackage document) {
+		Map<BigInteger, Comments.Comment> commentsById = new HashMap<>();
 		try {
-			for (Object contentObject : object.getContent()) {
-				if (contentObject instanceof CommentRangeStart) {
-					try {
-						BigInteger id = ((CommentRangeStart) contentObject).getId();
-						CommentsPart commentsPart = (CommentsPart) document.getParts()
-								.get(new PartName("/word/comments.xml"));
-						Comments comments = commentsPart.getContents();
-						for (Comments.Comment comment : comments.getComment()) {
-							if (comment.getId().equals(id)) {
-								return comment;
-							}
-						}
-					}
-					catch (InvalidFormatException e) {
-						logger.warn(String.format(
-								"Error while searching comment. Skipping object %s.",
-								object), e);
-					}
+			CommentsPart commentsPart = (CommentsPart) document.getParts()
+					.get(new PartName("/word/comments.xml"));
+			if (commentsPart != null) {
+				for (Comments.Comment comment : commentsPart.getContents().getComment()) {
+					commentsById.put(comment.getId(), comment);
 				}
 			}
-			return null;
 		}
 		catch (Docx4JException e) {
 			throw new DocxStamperException(
 					"error accessing the comments of the document!", e);
 		}
+		return commentsById;
 	}
 
 	public static String getCommentStringFor(ContentAccessor object,
@@ -199,9 +208,20 @@ public class CommentUtil {
 
 	public static Map<BigInteger, CommentWrapper> getComments(
 			WordprocessingMLPackage document) {
+		return getComments(document, getCommentsById(document));
+	}
+
+	/**
+	 * Same as getComments(WordprocessingMLPackage), except that the comments are taken from the given index instead
+	 * of reading the comments.xml part again.
+	 *
+	 * @param commentsById the comments of the document, as returned by getCommentsById().
+	 */
+	public static Map<BigInteger, CommentWrapper> getComments(
+			WordprocessingMLPackage document, Map<BigInteger, Comments.Comment> commentsById) {
 		Map<BigInteger, CommentWrapper> comments = new HashMap<>();
 		collectCommentRanges(comments, document);
-		collectComments(comments, document);
+		collectComments(comments, commentsById);
 		return comments;
 	}
 
@@ -234,22 +254,13 @@ public class CommentUtil {
 	}
 
 	private static void collectComments(final Map<BigInteger, CommentWrapper> comments,
-			WordprocessingMLPackage document) {
-		try {
-			CommentsPart commentsPart = (CommentsPart) document.getParts()
-					.get(new PartName("/word/comments.xml"));
-			if (commentsPart != null) {
-				for (Comments.Comment comment : commentsPart.getContents().getComment()) {
-					CommentWrapper commentWrapper = comments.get(comment.getId());
-					if (commentWrapper != null) {
-						commentWrapper.setComment(comment);
-					}
-				}
+			Map<BigInteger, Comments.Comment> commentsById) {
+		for (Comments.Comment comment : commentsById.values()) {
+			CommentWrapper commentWrapper = comments.get(comment.getId());
+			if (commentWrapper != null) {
+				commentWrapper.setComment(comment);
 			}
 		}
-		catch (Docx4JException e) {
-			throw new IllegalStateException(e);
-		}
 	}
 
 }
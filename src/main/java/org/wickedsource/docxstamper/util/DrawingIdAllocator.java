@@ -0,0 +1,157 @@
+package org.wickedsource.docxstamper.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.docx4j.XmlUtils;
+import org.docx4j.dml.CTNonVisualDrawingProps;
+import org.docx4j.dml.Graphic;
+import org.docx4j.dml.picture.Pic;
+import org.docx4j.dml.wordprocessingDrawing.Anchor;
+import org.docx4j.dml.wordprocessingDrawing.Inline;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.wml.Drawing;
+import org.docx4j.wml.P;
+import org.docx4j.wml.R;
+import org.wickedsource.docxstamper.api.coordinates.ParagraphCoordinates;
+import org.wickedsource.docxstamper.util.walk.BaseCoordinatesWalker;
+
+/**
+ * Hands out the ids of drawing objects (wp:docPr and pic:cNvPr) that are added to a document. Ids are allocated
+ * sequentially, starting after the highest id found in the template, so they do not collide with the drawings of the
+ * template and the same template stamped with the same context always gets the same ids. The allocator of a document
+ * is kept in the user data of the document, so it goes away with the document.
+ */
+public class DrawingIdAllocator {
+
+    private static final String USER_DATA_KEY = DrawingIdAllocator.class.getName();
+
+    private final AtomicInteger lastId;
+
+    private DrawingIdAllocator(int lastId) {
+        this.lastId = new AtomicInteger(lastId);
+    }
+
+    /**
+     * Creates the allocator of the given document, unless it already has one (which is the case for the sections of
+     * a merged document after the first one). Must be called before the document is stamped concurrently.
+     *
+     * @param document     the document to allocate ids for.
+     * @param maxDrawingId the highest drawing id in use in the document (see {@link #getMaxDrawingId(P)}).
+     * @return the allocator of the document.
+     */
+    public static DrawingIdAllocator seed(WordprocessingMLPackage document, int maxDrawingId) {
+        synchronized (document) {
+            DrawingIdAllocator allocator = (DrawingIdAllocator) document.getUserData(USER_DATA_KEY);
+            if (allocator == null) {
+                allocator = new DrawingIdAllocator(maxDrawingId);
+                document.setUserData(USER_DATA_KEY, allocator);
+            }
+            return allocator;
+        }
+    }
+
+    /**
+     * Returns the allocator of the given document. If the document has not been seeded, the document is searched
+     * for the drawing ids in use, so it must not be modified concurrently in this case.
+     */
+    public static DrawingIdAllocator forDocument(WordprocessingMLPackage document) {
+        synchronized (document) {
+            DrawingIdAllocator allocator = (DrawingIdAllocator) document.getUserData(USER_DATA_KEY);
+            if (allocator == null) {
+                allocator = new DrawingIdAllocator(findMaxDrawingId(document));
+                document.setUserData(USER_DATA_KEY, allocator);
+            }
+            return allocator;
+        }
+    }
+
+    /**
+     * @return an id that is not used by any other drawing object of the document.
+     */
+    public int nextId() {
+        return lastId.incrementAndGet();
+    }
+
+    /**
+     * Gives the drawing objects within the runs of the given paragraph new ids, so that a copy of a paragraph does not
+     * share the ids of the original.
+     */
+    public void reassignIds(P paragraph) {
+        for (CTNonVisualDrawingProps properties : getDrawingProperties(paragraph)) {
+            properties.setId(nextId());
+        }
+    }
+
+    private static int findMaxDrawingId(WordprocessingMLPackage document) {
+        final int[] maxDrawingId = new int[1];
+        new BaseCoordinatesWalker(document) {
+            @Override
+            protected void onParagraph(ParagraphCoordinates paragraphCoordinates) {
+                maxDrawingId[0] = Math.max(maxDrawingId[0], getMaxDrawingId(paragraphCoordinates.getParagraph()));
+            }
+        }.walk();
+        return maxDrawingId[0];
+    }
+
+    /**
+     * @return the highest id of the drawing objects within the runs of the given paragraph, 0 if there are none.
+     */
+    public static int getMaxDrawingId(P paragraph) {
+        int max = 0;
+        for (CTNonVisualDrawingProps properties : getDrawingProperties(paragraph)) {
+            // ids are unsigned ints, ids beyond Integer.MAX_VALUE would not leave room for further ids anyway
+            max = Math.max(max, (int) Math.min(properties.getId(), Integer.MAX_VALUE));
+        }
+        return max;
+    }
+
+    /**
+     * @return the properties holding the ids of the drawing objects (wp:docPr and pic:cNvPr) within the runs of the
+     * given paragraph.
+     */
+    private static List<CTNonVisualDrawingProps> getDrawingProperties(P paragraph) {
+        List<CTNonVisualDrawingProps> drawingProperties = new ArrayList<>();
+        for (Object contentElement : paragraph.getContent()) {
+            Object unwrapped = XmlUtils.unwrap(contentElement);
+            if (unwrapped instanceof R) {
+                addDrawingProperties((R) unwrapped, drawingProperties);
+            }
+        }
+        return drawingProperties;
+    }
+
+    private static void addDrawingProperties(R run, List<CTNonVisualDrawingProps> drawingProperties) {
+        for (Object runElement : run.getContent()) {
+            Object unwrapped = XmlUtils.unwrap(runElement);
+            if (unwrapped instanceof Drawing) {
+                for (Object anchorOrInline : ((Drawing) unwrapped).getAnchorOrInline()) {
+                    if (anchorOrInline instanceof Inline) {
+                        Inline inline = (Inline) anchorOrInline;
+                        addIfPresent(inline.getDocPr(), drawingProperties);
+                        addIfPresent(getPictureProperties(inline.getGraphic()), drawingProperties);
+                    } else if (anchorOrInline instanceof Anchor) {
+                        Anchor anchor = (Anchor) anchorOrInline;
+                        addIfPresent(anchor.getDocPr(), drawingProperties);
+                        addIfPresent(getPictureProperties(anchor.getGraphic()), drawingProperties);
+                    }
+                }
+            }
+        }
+    }
+
+    private static CTNonVisualDrawingProps getPictureProperties(Graphic graphic) {
+        if (graphic == null || graphic.getGraphicData() == null) {
+            return null;
+        }
+        Pic pic = graphic.getGraphicData().getPic();
+        return pic != null && pic.getNvPicPr() != null ? pic.getNvPicPr().getCNvPr() : null;
+    }
+
+    private static void addIfPresent(CTNonVisualDrawingProps properties, List<CTNonVisualDrawingProps> drawingProperties) {
+        if (properties != null) {
+            drawingProperties.add(properties);
+        }
+    }
+}
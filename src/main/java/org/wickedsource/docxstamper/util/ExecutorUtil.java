@@ -0,0 +1,53 @@
+package org.wickedsource.docxstamper.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.wickedsource.docxstamper.api.DocxStamperException;
+
+public class ExecutorUtil {
+
+    // looked up by reflection, since the library is compiled for Java 7
+    private static final Method newVirtualThreadPerTaskExecutor = findMethod(Executors.class, "newVirtualThreadPerTaskExecutor");
+
+    private ExecutorUtil() {
+
+    }
+
+    /**
+     * @return true if the running JVM supports virtual threads (Java 21 or later).
+     */
+    public static boolean isVirtualThreadSupported() {
+        return newVirtualThreadPerTaskExecutor != null;
+    }
+
+    /**
+     * Creates an ExecutorService that runs each task on a new virtual thread. Tasks that block on I/O (e.g. context
+     * objects loading data lazily) then do not block a platform thread.
+     *
+     * @return the result of Executors.newVirtualThreadPerTaskExecutor().
+     * @throws DocxStamperException if the running JVM does not support virtual threads.
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (newVirtualThreadPerTaskExecutor == null) {
+            throw new DocxStamperException("Virtual threads are not supported by this JVM. They require Java 21 or later.");
+        }
+        try {
+            return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+        } catch (IllegalAccessException e) {
+            throw new DocxStamperException(e);
+        } catch (InvocationTargetException e) {
+            throw new DocxStamperException(e.getCause());
+        }
+    }
+
+    private static Method findMethod(Class<?> type, String name) {
+        try {
+            return type.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
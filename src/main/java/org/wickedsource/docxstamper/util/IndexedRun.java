@@ -4,11 +4,11 @@ import org.docx4j.wml.R;
 
 public class IndexedRun {
 
-    private final int startIndex;
+    private int startIndex;
 
-    private final int endIndex;
+    private int endIndex;
 
-    private final int indexInParent;
+    private int indexInParent;
 
     private final R run;
 
@@ -39,6 +39,19 @@ public class IndexedRun {
         return run;
     }
 
+    /**
+     * Moves this run by the given offsets, after text or content elements have been added or removed before it. Only
+     * used by ParagraphWrapper, which does not keep its runs in hash based collections.
+     *
+     * @param textDelta    the number of characters added before this run (negative if removed).
+     * @param contentDelta the number of content elements added before this run (negative if removed).
+     */
+    void shift(int textDelta, int contentDelta) {
+        startIndex += textDelta;
+        endIndex += textDelta;
+        indexInParent += contentDelta;
+    }
+
     /**
      * Determines whether the specified range of start and end index touches this run.
      */
@@ -59,21 +72,21 @@ public class IndexedRun {
     public void replace(int globalStartIndex, int globalEndIndex, String replacement) {
         int localStartIndex = globalIndexToLocalIndex(globalStartIndex);
         int localEndIndex = globalIndexToLocalIndex(globalEndIndex);
-        String text = RunUtil.getText(run);
-        text = text.substring(0, localStartIndex);
-        text += replacement;
         String runText = RunUtil.getText(run);
+        StringBuilder text = new StringBuilder(runText.length() + replacement.length());
+        text.append(runText, 0, localStartIndex);
+        text.append(replacement);
         if (runText.length() > 0) {
-            text += RunUtil.getText(run).substring(localEndIndex + 1);
+            text.append(runText, localEndIndex + 1, runText.length());
         }
-        RunUtil.setText(run, text);
+        RunUtil.setText(run, text.toString());
     }
 
     private int globalIndexToLocalIndex(int globalIndex) {
         if (globalIndex < startIndex) {
             return 0;
         } else if (globalIndex > endIndex) {
-            return RunUtil.getText(run).length() - 1;
+            return RunUtil.getTextLength(run) - 1;
         } else {
             return globalIndex - startIndex;
         }
@@ -0,0 +1,128 @@
+package org.wickedsource.docxstamper.util;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.docx4j.XmlUtils;
+import org.docx4j.jaxb.Context;
+import org.docx4j.openpackaging.exceptions.Docx4JException;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.WordprocessingML.NumberingDefinitionsPart;
+import org.docx4j.wml.ContentAccessor;
+import org.docx4j.wml.Lvl;
+import org.docx4j.wml.Numbering;
+import org.docx4j.wml.ObjectFactory;
+import org.docx4j.wml.P;
+import org.docx4j.wml.PPrBase;
+import org.wickedsource.docxstamper.util.walk.BaseDocumentWalker;
+
+public class NumberingUtil {
+
+    private static ObjectFactory objectFactory = Context.getWmlObjectFactory();
+
+    private NumberingUtil() {
+
+    }
+
+    /**
+     * Makes the numbered paragraphs within the given content start their numbering anew, as if the content was a
+     * document of its own. Each list used by the content is replaced with a new list that refers to the same abstract
+     * numbering definition but restarts all of its levels. Numbering that a paragraph only gets from its style is
+     * left alone.
+     *
+     * @param document the document holding the numbering definitions.
+     * @param content  the content whose numbering is restarted, must be part of the given document.
+     * @throws Docx4JException if the numbering definitions cannot be read.
+     */
+    public static void restartNumbering(WordprocessingMLPackage document, ContentAccessor content) throws Docx4JException {
+        NumberingDefinitionsPart numberingPart = document.getMainDocumentPart().getNumberingDefinitionsPart();
+        if (numberingPart == null) {
+            return;
+        }
+        final Numbering numbering = numberingPart.getContents();
+        final Map<BigInteger, BigInteger> restartedNumIds = new HashMap<>();
+        new BaseDocumentWalker(content) {
+            @Override
+            protected void onParagraph(P paragraph) {
+                if (paragraph.getPPr() == null || paragraph.getPPr().getNumPr() == null) {
+                    return;
+                }
+                PPrBase.NumPr.NumId numId = paragraph.getPPr().getNumPr().getNumId();
+                // numId 0 removes the numbering a paragraph would get from its style
+                if (numId == null || numId.getVal() == null || BigInteger.ZERO.equals(numId.getVal())) {
+                    return;
+                }
+                if (!restartedNumIds.containsKey(numId.getVal())) {
+                    restartedNumIds.put(numId.getVal(), addRestartedNum(numbering, numId.getVal()));
+                }
+                BigInteger restartedNumId = restartedNumIds.get(numId.getVal());
+                if (restartedNumId != null) {
+                    numId.setVal(restartedNumId);
+                }
+            }
+        }.walk();
+        if (!restartedNumIds.isEmpty()) {
+            numberingPart.initialiseMaps();
+        }
+    }
+
+    /**
+     * Adds a copy of the list with the given id that restarts each level at its start value.
+     *
+     * @return the id of the added list or null if there is no list with the given id.
+     */
+    private static BigInteger addRestartedNum(Numbering numbering, BigInteger numId) {
+        Numbering.Num num = null;
+        BigInteger maxNumId = BigInteger.ZERO;
+        for (Numbering.Num candidate : numbering.getNum()) {
+            if (numId.equals(candidate.getNumId())) {
+                num = candidate;
+            }
+            if (candidate.getNumId() != null) {
+                maxNumId = maxNumId.max(candidate.getNumId());
+            }
+        }
+        if (num == null || num.getAbstractNumId() == null || num.getAbstractNumId().getVal() == null) {
+            return null;
+        }
+        Numbering.AbstractNum abstractNum = null;
+        for (Numbering.AbstractNum candidate : numbering.getAbstractNum()) {
+            if (num.getAbstractNumId().getVal().equals(candidate.getAbstractNumId())) {
+                abstractNum = candidate;
+            }
+        }
+        if (abstractNum == null) {
+            return null;
+        }
+
+        Numbering.Num restartedNum = XmlUtils.deepCopy(num);
+        restartedNum.setNumId(maxNumId.add(BigInteger.ONE));
+        for (Lvl level : abstractNum.getLvl()) {
+            if (level.getIlvl() == null) {
+                continue;
+            }
+            Numbering.Num.LvlOverride override = getLevelOverride(restartedNum, level.getIlvl());
+            if (override.getStartOverride() == null) {
+                Numbering.Num.LvlOverride.StartOverride startOverride = objectFactory.createNumberingNumLvlOverrideStartOverride();
+                // a level without start value starts at 0
+                startOverride.setVal(level.getStart() != null ? level.getStart().getVal() : BigInteger.ZERO);
+                override.setStartOverride(startOverride);
+            }
+        }
+        numbering.getNum().add(restartedNum);
+        return restartedNum.getNumId();
+    }
+
+    private static Numbering.Num.LvlOverride getLevelOverride(Numbering.Num num, BigInteger ilvl) {
+        for (Numbering.Num.LvlOverride override : num.getLvlOverride()) {
+            if (ilvl.equals(override.getIlvl())) {
+                return override;
+            }
+        }
+        Numbering.Num.LvlOverride override = objectFactory.createNumberingNumLvlOverride();
+        override.setIlvl(ilvl);
+        num.getLvlOverride().add(override);
+        return override;
+    }
+}
@@ -17,10 +17,10 @@ import org.docx4j.wml.R;
  */
 public class ParagraphWrapper {
 
-    private int currentPosition = 0;
-
     private List<IndexedRun> runs = new ArrayList<>();
 
+    private StringBuilder text = new StringBuilder();
+
     private P paragraph;
 
     public ParagraphWrapper(P paragraph) {
@@ -28,31 +28,39 @@ public class ParagraphWrapper {
         recalculateRuns();
     }
 
+    /**
+     * Rebuilds the aggregated text and the index of the runs from scratch. This is only needed if the paragraph has
+     * been modified from outside of this wrapper, since replace() keeps both up to date itself.
+     */
     public void recalculateRuns() {
-        currentPosition = 0;
         this.runs.clear();
-        int index = 0;
-        for (Object contentElement : paragraph.getContent()) {
-            if (contentElement instanceof R && !"".equals(RunUtil.getText((R) contentElement))) {
-                this.addRun((R) contentElement, index);
-            }
-            index++;
-        }
+        this.text.setLength(0);
+        indexRuns(0, paragraph.getContent().size() - 1, 0, this.runs, this.text);
     }
 
     /**
-     * Adds a run to the aggregation.
+     * Indexes the non-empty runs within the given range of the paragraph's content.
      *
-     * @param run the run to add.
+     * @param fromIndexInParent the index of the first content element to index.
+     * @param toIndexInParent   the index of the last content element to index.
+     * @param startIndex        the global index of the first character of the range.
+     * @param indexedRuns       the list to add the indexed runs to.
+     * @param rangeText         the builder to append the text of the runs to.
      */
-    private void addRun(R run, int index) {
-        int startIndex = currentPosition;
-        int endIndex = currentPosition + RunUtil.getText(run).length() - 1;
-        runs.add(new IndexedRun(startIndex, endIndex, index, run));
-        currentPosition = endIndex + 1;
+    private void indexRuns(int fromIndexInParent, int toIndexInParent, int startIndex, List<IndexedRun> indexedRuns, StringBuilder rangeText) {
+        List<Object> content = paragraph.getContent();
+        for (int index = fromIndexInParent; index <= toIndexInParent; index++) {
+            Object contentElement = content.get(index);
+            if (contentElement instanceof R) {
+                int runStart = rangeText.length();
+                RunUtil.appendText((R) contentElement, rangeText);
+                if (rangeText.length() > runStart) {
+                    indexedRuns.add(new IndexedRun(startIndex + runStart, startIndex + rangeText.length() - 1, index, (R) contentElement));
+                }
+            }
+        }
     }
 
-
     /**
      * Replaces the given placeholder String with the replacement object within the paragraph.
      * The replacement object must be a valid DOCX4J Object.
@@ -61,80 +69,125 @@ public class ParagraphWrapper {
      * @param replacement the object to replace the placeholder String.
      */
     public void replace(String placeholder, Object replacement) {
-        String text = getText();
         int matchStartIndex = text.indexOf(placeholder);
         if (matchStartIndex == -1) {
             // nothing to replace
             return;
         }
-        int matchEndIndex = matchStartIndex + placeholder.length() - 1;
-        List<IndexedRun> affectedRuns = getAffectedRuns(matchStartIndex, matchEndIndex);
+        replace(matchStartIndex, matchStartIndex + placeholder.length(), replacement);
+    }
 
-        boolean singleRun = affectedRuns.size() == 1;
+    /**
+     * Replaces the given range of the aggregated text with the replacement object within the paragraph.
+     * The replacement object must be a valid DOCX4J Object. Only the runs touched by the range are re-indexed, so
+     * text to the left of the range keeps its indexes. Multiple ranges of the same text can thus be replaced in a
+     * single pass from right to left without searching the text again.
+     *
+     * @param startIndex  the index of the first character to replace.
+     * @param endIndex    the index after the last character to replace.
+     * @param replacement the object to replace the range with.
+     */
+    public void replace(int startIndex, int endIndex, Object replacement) {
+        int matchStartIndex = startIndex;
+        int matchEndIndex = endIndex - 1;
+        int firstAffectedRun = findRunAt(matchStartIndex);
+        int lastAffectedRun = firstAffectedRun;
+        while (lastAffectedRun + 1 < runs.size() && runs.get(lastAffectedRun + 1).getStartIndex() <= matchEndIndex) {
+            lastAffectedRun++;
+        }
+        int contentSizeBefore = paragraph.getContent().size();
 
-        if (singleRun) {
-            IndexedRun run = affectedRuns.get(0);
+        if (firstAffectedRun == lastAffectedRun) {
+            IndexedRun run = runs.get(firstAffectedRun);
 
-            boolean placeholderSpansCompleteRun = placeholder.length() == RunUtil.getText(run.getRun()).length();
             boolean placeholderAtStartOfRun = matchStartIndex == run.getStartIndex();
             boolean placeholderAtEndOfRun = matchEndIndex == run.getEndIndex();
-            boolean placeholderWithinRun = matchStartIndex > run.getStartIndex() && matchEndIndex < run.getEndIndex();
+            boolean placeholderSpansCompleteRun = placeholderAtStartOfRun && placeholderAtEndOfRun;
 
             if (placeholderSpansCompleteRun) {
-                this.paragraph.getContent().remove(run.getRun());
+                this.paragraph.getContent().remove(run.getIndexInParent());
                 this.paragraph.getContent().add(run.getIndexInParent(), replacement);
-                recalculateRuns();
             } else if (placeholderAtStartOfRun) {
                 run.replace(matchStartIndex, matchEndIndex, "");
                 this.paragraph.getContent().add(run.getIndexInParent(), replacement);
-                recalculateRuns();
             } else if (placeholderAtEndOfRun) {
                 run.replace(matchStartIndex, matchEndIndex, "");
                 this.paragraph.getContent().add(run.getIndexInParent() + 1, replacement);
-                recalculateRuns();
-            } else if (placeholderWithinRun) {
-                String runText = RunUtil.getText(run.getRun());
-                int startIndex = runText.indexOf(placeholder);
-                int endIndex = startIndex + placeholder.length();
-                R run1 = RunUtil.create(runText.substring(0, startIndex), this.paragraph);
-                R run2 = RunUtil.create(runText.substring(endIndex), this.paragraph);
+            } else {
+                String runText = text.substring(run.getStartIndex(), run.getEndIndex() + 1);
+                R run1 = RunUtil.create(runText.substring(0, matchStartIndex - run.getStartIndex()), this.paragraph);
+                R run2 = RunUtil.create(runText.substring(matchEndIndex + 1 - run.getStartIndex()), this.paragraph);
+                this.paragraph.getContent().remove(run.getIndexInParent());
                 this.paragraph.getContent().add(run.getIndexInParent(), run2);
                 this.paragraph.getContent().add(run.getIndexInParent(), replacement);
                 this.paragraph.getContent().add(run.getIndexInParent(), run1);
-                this.paragraph.getContent().remove(run.getRun());
-                recalculateRuns();
             }
 
         } else {
-            IndexedRun firstRun = affectedRuns.get(0);
-            IndexedRun lastRun = affectedRuns.get(affectedRuns.size() - 1);
+            IndexedRun firstRun = runs.get(firstAffectedRun);
+            IndexedRun lastRun = runs.get(lastAffectedRun);
 
             // remove the placeholder from first and last run
             firstRun.replace(matchStartIndex, matchEndIndex, "");
             lastRun.replace(matchStartIndex, matchEndIndex, "");
 
             // remove all runs between first and last
-            for (IndexedRun run : affectedRuns) {
-                if (run != firstRun && run != lastRun) {
-                    this.paragraph.getContent().remove(run.getRun());
-                }
+            for (int i = lastAffectedRun - 1; i > firstAffectedRun; i--) {
+                this.paragraph.getContent().remove(runs.get(i).getIndexInParent());
             }
 
             // add replacement run between first and last run
             this.paragraph.getContent().add(firstRun.getIndexInParent() + 1, replacement);
+        }
+
+        reindexRuns(firstAffectedRun, lastAffectedRun, paragraph.getContent().size() - contentSizeBefore);
+    }
 
-            recalculateRuns();
+    /**
+     * Returns the index of the run containing the character at the given global index.
+     */
+    private int findRunAt(int globalIndex) {
+        int low = 0;
+        int high = runs.size() - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (runs.get(middle).getEndIndex() < globalIndex) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
         }
+        return low;
     }
 
-    private List<IndexedRun> getAffectedRuns(int startIndex, int endIndex) {
-        List<IndexedRun> affectedRuns = new ArrayList<>();
-        for (IndexedRun run : runs) {
-            if (run.isTouchedByRange(startIndex, endIndex)) {
-                affectedRuns.add(run);
+    /**
+     * Re-indexes the content elements that replaced the given runs and shifts the indexes of all following runs.
+     *
+     * @param firstAffectedRun the index of the first replaced run within the list of runs.
+     * @param lastAffectedRun  the index of the last replaced run within the list of runs.
+     * @param contentDelta     the number of content elements that have been added to the paragraph (negative if
+     *                         elements have been removed).
+     */
+    private void reindexRuns(int firstAffectedRun, int lastAffectedRun, int contentDelta) {
+        IndexedRun firstRun = runs.get(firstAffectedRun);
+        IndexedRun lastRun = runs.get(lastAffectedRun);
+        int rangeStartIndex = firstRun.getStartIndex();
+        int rangeEndIndex = lastRun.getEndIndex() + 1;
+
+        List<IndexedRun> rangeRuns = new ArrayList<>();
+        StringBuilder rangeText = new StringBuilder();
+        indexRuns(firstRun.getIndexInParent(), lastRun.getIndexInParent() + contentDelta, rangeStartIndex, rangeRuns, rangeText);
+        int textDelta = rangeText.length() - (rangeEndIndex - rangeStartIndex);
+
+        if (textDelta != 0 || contentDelta != 0) {
+            // shifted in place, so a replacement does not allocate anything for the runs after it
+            for (int i = lastAffectedRun + 1; i < runs.size(); i++) {
+                runs.get(i).shift(textDelta, contentDelta);
             }
         }
-        return affectedRuns;
+        runs.subList(firstAffectedRun, lastAffectedRun + 1).clear();
+        runs.addAll(firstAffectedRun, rangeRuns);
+        text.replace(rangeStartIndex, rangeEndIndex, rangeText.toString());
     }
 
     /**
@@ -143,15 +196,7 @@ public class ParagraphWrapper {
      * @return the text of all runs.
      */
     public String getText() {
-        return getText(this.runs);
-    }
-
-    private String getText(List<IndexedRun> runs) {
-        StringBuilder builder = new StringBuilder();
-        for (IndexedRun run : runs) {
-            builder.append(RunUtil.getText(run.getRun()));
-        }
-        return builder.toString();
+        return text.toString();
     }
 
     /**
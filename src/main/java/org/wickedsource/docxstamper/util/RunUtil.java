@@ -21,7 +21,18 @@ public class RunUtil {
      * @return String representation of the run.
      */
     public static String getText(R run) {
-        String result = "";
+        StringBuilder builder = new StringBuilder();
+        appendText(run, builder);
+        return builder.toString();
+    }
+
+    /**
+     * Appends the text of a run to the given buffer. Same as getText(R) but without creating intermediate Strings.
+     *
+     * @param run    the run whose text to append.
+     * @param buffer the buffer to append the text to.
+     */
+    public static void appendText(R run, StringBuilder buffer) {
         for (Object content : run.getContent()) {
             if (content instanceof JAXBElement) {
                 JAXBElement element = (JAXBElement) content;
@@ -31,17 +42,102 @@ public class RunUtil {
                     if (!"preserve".equals(textObj.getSpace())) {
                         // trimming text if spaces are not to be preserved (simulates behavior of Word; LibreOffice seems
                         // to ignore the "space" property and always preserves spaces)
-                        text = text.trim();
+                        int start = trimStart(text);
+                        buffer.append(text, start, trimEnd(text, start));
+                    } else {
+                        buffer.append(text);
+                    }
+                } else if (element.getValue() instanceof R.Tab) {
+                    buffer.append('\t');
+                }
+            } else if (content instanceof Text) {
+                buffer.append(((Text) content).getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the text of a run without building the text.
+     *
+     * @param run the run whose text length to get.
+     * @return the length of the String returned by getText(R).
+     */
+    public static int getTextLength(R run) {
+        int length = 0;
+        for (Object content : run.getContent()) {
+            if (content instanceof JAXBElement) {
+                JAXBElement element = (JAXBElement) content;
+                if (element.getValue() instanceof Text) {
+                    Text textObj = (Text) element.getValue();
+                    String text = textObj.getValue();
+                    if (!"preserve".equals(textObj.getSpace())) {
+                        int start = trimStart(text);
+                        length += trimEnd(text, start) - start;
+                    } else {
+                        length += text.length();
                     }
-                    result += text;
-                }else if (element.getValue() instanceof R.Tab){
-                    result += "\t";
+                } else if (element.getValue() instanceof R.Tab) {
+                    length++;
                 }
             } else if (content instanceof Text) {
-                result += ((Text) content).getValue();
+                length += ((Text) content).getValue().length();
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Returns the index of the first character String.trim() would keep.
+     */
+    private static int trimStart(String text) {
+        int start = 0;
+        while (start < text.length() && text.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Returns the index after the last character String.trim() would keep.
+     */
+    private static int trimEnd(String text, int start) {
+        int end = text.length();
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Checks if the text of any run within the given paragraph contains the given character. This is much cheaper
+     * than building the text of the paragraph and can be used to skip paragraphs that cannot contain an expression.
+     *
+     * @param paragraph the paragraph whose runs to check.
+     * @param c         the character to look for.
+     * @return true if the character is found in any of the runs of the paragraph.
+     */
+    public static boolean containsChar(P paragraph, char c) {
+        for (Object contentElement : paragraph.getContent()) {
+            if (contentElement instanceof R && containsChar((R) contentElement, c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsChar(R run, char c) {
+        for (Object content : run.getContent()) {
+            if (content instanceof JAXBElement) {
+                content = ((JAXBElement) content).getValue();
+            }
+            if (content instanceof Text) {
+                String text = ((Text) content).getValue();
+                if (text != null && text.indexOf(c) != -1) {
+                    return true;
+                }
             }
         }
-        return result;
+        return false;
     }
 
     /**
@@ -2,6 +2,7 @@ package org.wickedsource.docxstamper.util.walk;
 
 import org.docx4j.XmlUtils;
 import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.Part;
 import org.docx4j.openpackaging.parts.WordprocessingML.FooterPart;
 import org.docx4j.openpackaging.parts.WordprocessingML.HeaderPart;
 import org.docx4j.openpackaging.parts.relationships.Namespaces;
@@ -32,16 +33,19 @@ public abstract class CoordinatesWalker {
         List<Relationship> headerRelationships = getRelationshipsOfType(document, Namespaces.HEADER);
         for (Relationship header : headerRelationships) {
             HeaderPart headerPart = (HeaderPart) relationshipsPart.getPart(header.getId());
+            onPart(headerPart);
             walkContent(headerPart.getContent());
         }
 
         // walk through elements in main document part
+        onPart(document.getMainDocumentPart());
         walkContent(document.getMainDocumentPart().getContent());
 
         // walk through elements in headers
         List<Relationship> footerRelationships = getRelationshipsOfType(document, Namespaces.FOOTER);
         for (Relationship footer : footerRelationships) {
             FooterPart footerPart = (FooterPart) relationshipsPart.getPart(footer.getId());
+            onPart(footerPart);
             walkContent(footerPart.getContent());
         }
     }
@@ -141,6 +145,15 @@ public abstract class CoordinatesWalker {
         }
     }
 
+    /**
+     * Called before the content of a part (header, main document or footer) is walked.
+     *
+     * @param part the part whose content is walked next.
+     */
+    protected void onPart(Part part) {
+
+    }
+
     protected abstract void onParagraph(ParagraphCoordinates paragraphCoordinates);
 
     protected abstract CommentWrapper onRun(RunCoordinates runCoordinates, ParagraphCoordinates paragraphCoordinates);
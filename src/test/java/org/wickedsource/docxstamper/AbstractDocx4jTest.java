@@ -4,8 +4,13 @@ import org.docx4j.openpackaging.exceptions.Docx4JException;
 import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.wickedsource.docxstamper.api.coordinates.ParagraphCoordinates;
+import org.wickedsource.docxstamper.util.ParagraphWrapper;
+import org.wickedsource.docxstamper.util.walk.BaseCoordinatesWalker;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Common methods to interact with docx documents.
@@ -75,5 +80,18 @@ public abstract class AbstractDocx4jTest {
         return in;
     }
 
+    /**
+     * @return the texts of all paragraphs of the given document (including headers and footers) as one String.
+     */
+    protected String getText(WordprocessingMLPackage document) {
+        final List<String> texts = new ArrayList<>();
+        new BaseCoordinatesWalker(document) {
+            @Override
+            protected void onParagraph(ParagraphCoordinates paragraphCoordinates) {
+                texts.add(new ParagraphWrapper(paragraphCoordinates.getParagraph()).getText());
+            }
+        }.walk();
+        return texts.toString();
+    }
 
 }
@@ -0,0 +1,83 @@
+package org.wickedsource.docxstamper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.docx4j.openpackaging.exceptions.Docx4JException;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.junit.Assert;
+import org.junit.Test;
+import org.wickedsource.docxstamper.context.Character;
+import org.wickedsource.docxstamper.context.CharactersContext;
+import org.wickedsource.docxstamper.context.NameContext;
+
+public class CompiledTemplateTest extends AbstractDocx4jTest {
+
+    @Test
+    public void compiledTemplateWithCommentsIsStampedLikeTemplate() throws Docx4JException, IOException {
+        NameContext context = new NameContext();
+        context.setName("Homer");
+        assertCompiledTemplateIsStampedLikeTemplate("ConditionalDisplayOfParagraphsTest.docx", context);
+    }
+
+    @Test
+    public void compiledTemplateWithInlineProcessorExpressionsIsStampedLikeTemplate() throws Docx4JException, IOException {
+        NameContext context = new NameContext();
+        context.setName("Homer");
+        assertCompiledTemplateIsStampedLikeTemplate("ConditionalDisplayOfParagraphsWithoutCommentTest.docx", context);
+    }
+
+    @Test
+    public void compiledTemplateWithHeaderAndFooterIsStampedLikeTemplate() throws Docx4JException, IOException {
+        NameContext context = new NameContext();
+        context.setName("Homer Simpson");
+        assertCompiledTemplateIsStampedLikeTemplate("ExpressionReplacementInHeaderAndFooterTest.docx", context);
+    }
+
+    @Test
+    public void compiledTemplateWithRepeatedRowsIsStampedLikeTemplate() throws Docx4JException, IOException {
+        CharactersContext context = new CharactersContext();
+        context.getCharacters().add(new Character("Homer Simpson", "Dan Castellaneta"));
+        context.getCharacters().add(new Character("Marge Simpson", "Julie Kavner"));
+        context.getCharacters().add(new Character("Bart Simpson", "Nancy Cartwright"));
+        assertCompiledTemplateIsStampedLikeTemplate("RepeatTableRowTest.docx", context);
+    }
+
+    @Test
+    public void compiledTemplateCanBeStampedWithDifferentContexts() throws Docx4JException, IOException {
+        DocxStamper<NameContext> stamper = new DocxStamper<>();
+        CompiledTemplate template = stamper.compile(getClass().getResourceAsStream("ExpressionReplacementInGlobalParagraphsTest.docx"));
+
+        NameContext homer = new NameContext();
+        homer.setName("Homer Simpson");
+        NameContext marge = new NameContext();
+        marge.setName("Marge Simpson");
+
+        String homerText = getText(stamp(stamper, template, homer));
+        String margeText = getText(stamp(stamper, template, marge));
+
+        Assert.assertTrue(homerText.contains("Homer Simpson"));
+        Assert.assertFalse(homerText.contains("Marge Simpson"));
+        Assert.assertTrue(margeText.contains("Marge Simpson"));
+        Assert.assertFalse(margeText.contains("Homer Simpson"));
+    }
+
+    private <T> void assertCompiledTemplateIsStampedLikeTemplate(String templateName, T context) throws Docx4JException, IOException {
+        DocxStamper<T> stamper = new DocxStamper<>();
+        WordprocessingMLPackage expected = stampAndLoad(getClass().getResourceAsStream(templateName), context);
+
+        CompiledTemplate template = stamper.compile(getClass().getResourceAsStream(templateName));
+        // stamping twice makes sure the compiled template is not modified by stamping it
+        Assert.assertEquals(getText(expected), getText(stamp(stamper, template, context)));
+        Assert.assertEquals(getText(expected), getText(stamp(stamper, template, context)));
+    }
+
+    private <T> WordprocessingMLPackage stamp(DocxStamper<T> stamper, CompiledTemplate template, T context) throws IOException, Docx4JException {
+        OutputStream out = getOutputStream();
+        stamper.stamp(template, context, out);
+        InputStream in = getInputStream(out);
+        return WordprocessingMLPackage.load(in);
+    }
+
+}
@@ -0,0 +1,314 @@
+package org.wickedsource.docxstamper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.docx4j.openpackaging.exceptions.Docx4JException;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.junit.Assert;
+import org.junit.Test;
+import org.wickedsource.docxstamper.api.DocumentSink;
+import org.wickedsource.docxstamper.api.DocxStamperException;
+import org.wickedsource.docxstamper.api.commentprocessor.ICommentProcessor;
+import org.wickedsource.docxstamper.api.commentprocessor.ICommentProcessorFactory;
+import org.wickedsource.docxstamper.context.Character;
+import org.wickedsource.docxstamper.context.CharactersContext;
+import org.wickedsource.docxstamper.context.NameContext;
+import org.wickedsource.docxstamper.processor.repeat.ILoopProcessor;
+import org.wickedsource.docxstamper.processor.repeat.LoopProcessor;
+
+public class ConcurrentStampingTest extends AbstractDocx4jTest {
+
+    @Test
+    public void sharedStamperStampsConcurrently() throws Exception {
+        final DocxStamper<CharactersContext> stamper = new DocxStamper<>();
+        final CompiledTemplate template = stamper.compile(getClass().getResourceAsStream("RepeatTableRowTest.docx"));
+        final List<CharactersContext> contexts = new ArrayList<>();
+        List<String> expectedTexts = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            CharactersContext context = new CharactersContext();
+            for (int j = 0; j < i; j++) {
+                context.getCharacters().add(new Character("Character " + i + "." + j, "Actor " + i + "." + j));
+            }
+            contexts.add(context);
+            expectedTexts.add(getText(stampAndLoad(getClass().getResourceAsStream("RepeatTableRowTest.docx"), context)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int round = 0; round < 4; round++) {
+                for (final CharactersContext context : contexts) {
+                    results.add(executor.submit(new Callable<String>() {
+                        @Override
+                        public String call() throws Exception {
+                            ByteArrayOutputStream out = new ByteArrayOutputStream();
+                            stamper.stamp(template, context, out);
+                            return getText(WordprocessingMLPackage.load(new ByteArrayInputStream(out.toByteArray())));
+                        }
+                    }));
+                }
+            }
+            for (int i = 0; i < results.size(); i++) {
+                Assert.assertEquals(expectedTexts.get(i % contexts.size()), results.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void batchStampsOneDocumentPerContext() throws Exception {
+        DocxStamper<NameContext> stamper = new DocxStamper<>();
+        List<NameContext> contexts = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            NameContext context = new NameContext();
+            context.setName("Homer " + i);
+            contexts.add(context);
+        }
+        final Map<NameContext, ByteArrayOutputStream> documents = new ConcurrentHashMap<>();
+        final AtomicInteger openDocuments = new AtomicInteger();
+        final AtomicBoolean tooManyOpenDocuments = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            stamper.stampAll(stamper.compile(getClass().getResourceAsStream("ExpressionReplacementInGlobalParagraphsTest.docx")),
+                    contexts, new DocumentSink<NameContext>() {
+                        @Override
+                        public OutputStream openOutputStream(NameContext contextRoot) {
+                            if (openDocuments.incrementAndGet() > 2) {
+                                tooManyOpenDocuments.set(true);
+                            }
+                            ByteArrayOutputStream out = new ByteArrayOutputStream() {
+                                @Override
+                                public void close() {
+                                    openDocuments.decrementAndGet();
+                                }
+                            };
+                            documents.put(contextRoot, out);
+                            return out;
+                        }
+                    }, executor, 2);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(contexts.size(), documents.size());
+        Assert.assertFalse(tooManyOpenDocuments.get());
+        for (NameContext context : contexts) {
+            WordprocessingMLPackage document = WordprocessingMLPackage.load(new ByteArrayInputStream(documents.get(context).toByteArray()));
+            Assert.assertTrue(getText(document).contains(context.getName()));
+        }
+    }
+
+    @Test
+    public void batchIsStampedWithVirtualThreadsEnabled() throws Exception {
+        DocxStamper<NameContext> stamper = new DocxStamperConfiguration()
+                .setVirtualThreads(true)
+                .setMaxDocumentsInFlight(3)
+                .build();
+        List<NameContext> contexts = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            NameContext context = new NameContext();
+            context.setName("Homer " + i);
+            contexts.add(context);
+        }
+        final Map<NameContext, ByteArrayOutputStream> documents = new ConcurrentHashMap<>();
+        stamper.stampAll(getClass().getResourceAsStream("ExpressionReplacementInGlobalParagraphsTest.docx"),
+                contexts, new DocumentSink<NameContext>() {
+                    @Override
+                    public OutputStream openOutputStream(NameContext contextRoot) {
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        documents.put(contextRoot, out);
+                        return out;
+                    }
+                });
+
+        for (NameContext context : contexts) {
+            WordprocessingMLPackage document = WordprocessingMLPackage.load(new ByteArrayInputStream(documents.get(context).toByteArray()));
+            Assert.assertTrue(getText(document).contains(context.getName()));
+        }
+    }
+
+    @Test
+    public void batchFailureIsRethrown() throws Exception {
+        DocxStamper<NameContext> stamper = new DocxStamper<>();
+        List<NameContext> contexts = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            contexts.add(new NameContext());
+        }
+        try {
+            stamper.stampAll(getClass().getResourceAsStream("ExpressionReplacementInGlobalParagraphsTest.docx"),
+                    contexts, new DocumentSink<NameContext>() {
+                        @Override
+                        public OutputStream openOutputStream(NameContext contextRoot) throws IOException {
+                            throw new IOException("disk full");
+                        }
+                    });
+            Assert.fail("DocxStamperException expected");
+        } catch (DocxStamperException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void runningDocumentsAreWaitedForWhenContextsCannotBeIterated() throws Exception {
+        DocxStamper<NameContext> stamper = new DocxStamper<>();
+        final NameContext context = new NameContext();
+        context.setName("Homer");
+        Iterable<NameContext> failingContexts = new Iterable<NameContext>() {
+            @Override
+            public Iterator<NameContext> iterator() {
+                return new Iterator<NameContext>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return true;
+                    }
+
+                    @Override
+                    public NameContext next() {
+                        if (next++ == 2) {
+                            throw new IllegalStateException("database is gone");
+                        }
+                        return context;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+        final AtomicInteger openedDocuments = new AtomicInteger();
+        final AtomicInteger closedDocuments = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            stamper.stampAll(stamper.compile(getClass().getResourceAsStream("ExpressionReplacementInGlobalParagraphsTest.docx")),
+                    failingContexts, new DocumentSink<NameContext>() {
+                        @Override
+                        public OutputStream openOutputStream(NameContext contextRoot) throws IOException {
+                            openedDocuments.incrementAndGet();
+                            try {
+                                Thread.sleep(200);
+                            } catch (InterruptedException e) {
+                                throw new IOException(e);
+                            }
+                            return new ByteArrayOutputStream() {
+                                private boolean closed;
+
+                                @Override
+                                public void close() {
+                                    // saving the document closes the stream as well
+                                    if (!closed) {
+                                        closed = true;
+                                        closedDocuments.incrementAndGet();
+                                    }
+                                }
+                            };
+                        }
+                    }, executor, 2);
+            Assert.fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            int opened = openedDocuments.get();
+            Assert.assertEquals(opened, closedDocuments.get());
+            Thread.sleep(300);
+            Assert.assertEquals(opened, openedDocuments.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void commentProcessorFactoryIsCalledForEachStamp() throws Docx4JException, IOException {
+        final AtomicInteger createdProcessors = new AtomicInteger();
+        DocxStamperConfiguration config = new DocxStamperConfiguration()
+                .addCommentProcessor(ILoopProcessor.class, new ICommentProcessorFactory() {
+                    @Override
+                    public ICommentProcessor createCommentProcessor() {
+                        createdProcessors.incrementAndGet();
+                        return new LoopProcessor();
+                    }
+                });
+        DocxStamper<NameContext> stamper = new DocxStamper<>(config);
+        NameContext context = new NameContext();
+        context.setName("Homer");
+
+        for (int i = 0; i < 2; i++) {
+            InputStream template = getClass().getResourceAsStream("ExpressionReplacementInGlobalParagraphsTest.docx");
+            stamper.stamp(template, context, new ByteArrayOutputStream());
+        }
+
+        Assert.assertEquals(2, createdProcessors.get());
+    }
+
+    @Test
+    public void batchWithSharedCommentProcessorFailsFast() {
+        DocxStamper<NameContext> stamper = new DocxStamperConfiguration()
+                .addCommentProcessor(ILoopProcessor.class, new LoopProcessor())
+                .build();
+        final AtomicInteger openedDocuments = new AtomicInteger();
+        NameContext context = new NameContext();
+        context.setName("Homer");
+        try {
+            stamper.stampAll(getClass().getResourceAsStream("ExpressionReplacementInGlobalParagraphsTest.docx"),
+                    Collections.singletonList(context), new DocumentSink<NameContext>() {
+                        @Override
+                        public OutputStream openOutputStream(NameContext contextRoot) {
+                            openedDocuments.incrementAndGet();
+                            return new ByteArrayOutputStream();
+                        }
+                    });
+            Assert.fail("DocxStamperException expected");
+        } catch (DocxStamperException e) {
+            Assert.assertEquals(0, openedDocuments.get());
+        }
+    }
+
+    @Test
+    public void batchWithSharedCommentProcessorIsStampedOneAtATime() throws Exception {
+        DocxStamper<NameContext> stamper = new DocxStamperConfiguration()
+                .addCommentProcessor(ILoopProcessor.class, new LoopProcessor())
+                .build();
+        List<NameContext> contexts = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            NameContext context = new NameContext();
+            context.setName("Homer " + i);
+            contexts.add(context);
+        }
+        final Map<NameContext, ByteArrayOutputStream> documents = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            stamper.stampAll(stamper.compile(getClass().getResourceAsStream("ExpressionReplacementInGlobalParagraphsTest.docx")),
+                    contexts, new DocumentSink<NameContext>() {
+                        @Override
+                        public OutputStream openOutputStream(NameContext contextRoot) {
+                            ByteArrayOutputStream out = new ByteArrayOutputStream();
+                            documents.put(contextRoot, out);
+                            return out;
+                        }
+                    }, executor, 1);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(contexts.size(), documents.size());
+    }
+
+}
@@ -2,18 +2,22 @@ package org.wickedsource.docxstamper;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.docx4j.openpackaging.exceptions.Docx4JException;
 import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.wml.P;
 import org.junit.Assert;
 import org.junit.Test;
 import org.wickedsource.docxstamper.api.commentprocessor.ICommentProcessor;
 import org.wickedsource.docxstamper.api.coordinates.ParagraphCoordinates;
 import org.wickedsource.docxstamper.api.coordinates.RunCoordinates;
 import org.wickedsource.docxstamper.api.coordinates.TableCoordinates;
+import org.wickedsource.docxstamper.el.ExpressionCache;
 import org.wickedsource.docxstamper.processor.CommentProcessorRegistry;
+import org.wickedsource.docxstamper.util.ParagraphWrapper;
 
 public class CustomCommentProcessorTest extends AbstractDocx4jTest {
 
@@ -27,10 +31,69 @@ public class CustomCommentProcessorTest extends AbstractDocx4jTest {
         Assert.assertEquals(2, processor.getVisitedParagraphs().size());
     }
 
+    @Test
+    public void contextRootNeedsNoDefaultConstructor() throws Docx4JException, IOException {
+        CustomCommentProcessor processor = new CustomCommentProcessor();
+        DocxStamperConfiguration config = new DocxStamperConfiguration()
+                .addCommentProcessor(ICustomCommentProcessor.class, processor);
+        InputStream template = getClass().getResourceAsStream("CustomCommentProcessorTest.docx");
+        stampAndLoad(template, new FinalContext("Homer"), config);
+        Assert.assertEquals(2, processor.getVisitedParagraphs().size());
+    }
+
+    @Test
+    public void stampersSharingAnExpressionCacheCallTheirOwnCommentProcessors() throws Docx4JException, IOException {
+        ExpressionCache cache = new ExpressionCache();
+        CustomCommentProcessor processor1 = new CustomCommentProcessor();
+        CustomCommentProcessor processor2 = new CustomCommentProcessor();
+        DocxStamperConfiguration config1 = new DocxStamperConfiguration()
+                .setExpressionCache(cache)
+                .addCommentProcessor(ICustomCommentProcessor.class, processor1);
+        DocxStamperConfiguration config2 = new DocxStamperConfiguration()
+                .setExpressionCache(cache)
+                .addCommentProcessor(ICustomCommentProcessor.class, processor2);
+
+        stampAndLoad(getClass().getResourceAsStream("CustomCommentProcessorTest.docx"), new EmptyContext(), config1);
+        stampAndLoad(getClass().getResourceAsStream("CustomCommentProcessorTest.docx"), new EmptyContext(), config2);
+
+        Assert.assertEquals(2, processor1.getVisitedParagraphs().size());
+        Assert.assertEquals(2, processor2.getVisitedParagraphs().size());
+    }
+
+    @Test
+    public void commentProcessorMethodsAreNotCallableFromPlaceholders() throws Docx4JException, IOException {
+        CustomCommentProcessor processor = new CustomCommentProcessor();
+        DocxStamper<EmptyContext> stamper = new DocxStamper<>(new DocxStamperConfiguration()
+                .addCommentProcessor(ICustomCommentProcessor.class, processor));
+        WordprocessingMLPackage template = WordprocessingMLPackage.createPackage();
+        template.getMainDocumentPart().addParagraphOfText("${visitParagraph()}");
+
+        OutputStream out = getOutputStream();
+        stamper.stamp(template, new EmptyContext(), out);
+        WordprocessingMLPackage document = WordprocessingMLPackage.load(getInputStream(out));
+
+        Assert.assertTrue(processor.getVisitedParagraphs().isEmpty());
+        Assert.assertEquals("${visitParagraph()}",
+                new ParagraphWrapper((P) document.getMainDocumentPart().getContent().get(0)).getText());
+    }
+
     static class EmptyContext{
 
     }
 
+    static final class FinalContext {
+
+        private final String name;
+
+        FinalContext(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
     public interface ICustomCommentProcessor {
 
         void visitParagraph();
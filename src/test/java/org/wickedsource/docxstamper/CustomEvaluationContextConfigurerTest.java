@@ -14,6 +14,7 @@ import org.springframework.expression.PropertyAccessor;
 import org.springframework.expression.TypedValue;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.wickedsource.docxstamper.api.EvaluationContextConfigurer;
+import org.wickedsource.docxstamper.context.NameContext;
 import org.wickedsource.docxstamper.util.ParagraphWrapper;
 
 public class CustomEvaluationContextConfigurerTest extends AbstractDocx4jTest {
@@ -35,6 +36,27 @@ public class CustomEvaluationContextConfigurerTest extends AbstractDocx4jTest {
     Assert.assertEquals("The variable foo has the value bar.", new ParagraphWrapper(p2).getText());
   }
 
+  @Test
+  public void evaluationContextIsConfiguredOncePerStamp() throws Docx4JException, IOException {
+    final int[] configurations = new int[1];
+    DocxStamperConfiguration config = new DocxStamperConfiguration();
+    config.setEvaluationContextConfigurer(new EvaluationContextConfigurer() {
+      @Override
+      public void configureEvaluationContext(StandardEvaluationContext context) {
+        configurations[0]++;
+      }
+    });
+    DocxStamper<NameContext> stamper = new DocxStamper<>(config);
+    NameContext context = new NameContext();
+    context.setName("Homer Simpson");
+
+    stamper.stamp(getClass().getResourceAsStream("ExpressionReplacementInGlobalParagraphsTest.docx"), context, getOutputStream());
+    Assert.assertEquals(1, configurations[0]);
+
+    stamper.stamp(getClass().getResourceAsStream("ExpressionReplacementInGlobalParagraphsTest.docx"), context, getOutputStream());
+    Assert.assertEquals(2, configurations[0]);
+  }
+
   static class EmptyContext {
 
   }
@@ -6,12 +6,14 @@ import org.docx4j.wml.P;
 import org.junit.Assert;
 import org.junit.Test;
 import org.wickedsource.docxstamper.context.DateContext;
+import org.wickedsource.docxstamper.replace.typeresolver.TemporalResolver;
 import org.wickedsource.docxstamper.util.ParagraphWrapper;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.TimeZone;
 
 public class DateReplacementTest extends AbstractDocx4jTest {
 
@@ -30,5 +32,53 @@ public class DateReplacementTest extends AbstractDocx4jTest {
 
     }
 
+    @Test
+    public void dateFormatIsConfigurable() throws Docx4JException, IOException {
+        Date now = new Date();
+        DateContext context = new DateContext();
+        context.setDate(now);
+
+        InputStream template = getClass().getResourceAsStream("DateReplacementTest.docx");
+        WordprocessingMLPackage document = stampAndLoad(template, context, new DocxStamperConfiguration().setDateFormat("yyyy-MM-dd"));
+
+        ParagraphWrapper p = new ParagraphWrapper(((P) document.getMainDocumentPart().getContent().get(1)));
+
+        Assert.assertEquals("Today is: " + new SimpleDateFormat("yyyy-MM-dd").format(now), p.getText());
+    }
+
+    @Test
+    public void timeZoneIsConfigurable() throws Docx4JException, IOException {
+        DateContext context = new DateContext();
+        context.setDate(new Date(1489449600000L));
+
+        InputStream template = getClass().getResourceAsStream("DateReplacementTest.docx");
+        WordprocessingMLPackage document = stampAndLoad(template, context, new DocxStamperConfiguration()
+                .setDateFormat("dd.MM.yyyy HH:mm")
+                .setTimeZone(TimeZone.getTimeZone("GMT-05:00")));
+
+        ParagraphWrapper p = new ParagraphWrapper(((P) document.getMainDocumentPart().getContent().get(1)));
+
+        Assert.assertEquals("Today is: 13.03.2017 19:00", p.getText());
+    }
+
+    @Test
+    public void dateFormatMustMeanTheSameToBothFormatters() {
+        if (!TemporalResolver.isSupported()) {
+            return;
+        }
+        // "u" is the day of the week for SimpleDateFormat, but the year for DateTimeFormatter
+        try {
+            new DocxStamperConfiguration().setDateFormat("dd.MM.u");
+            Assert.fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("dd.MM.u"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidDateFormatIsRejected() {
+        new DocxStamperConfiguration().setDateFormat("dd.MM.yyyy bb");
+    }
+
 
 }
@@ -1,13 +1,18 @@
 package org.wickedsource.docxstamper;
 
 import org.docx4j.openpackaging.exceptions.Docx4JException;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.wml.P;
+import org.junit.Assert;
 import org.junit.Test;
 import org.wickedsource.docxstamper.api.UnresolvedExpressionException;
 import org.wickedsource.docxstamper.context.NameContext;
+import org.wickedsource.docxstamper.util.ParagraphWrapper;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 public class FailOnUnresolvedExpressionTest extends AbstractDocx4jTest {
 
@@ -32,4 +37,20 @@ public class FailOnUnresolvedExpressionTest extends AbstractDocx4jTest {
         // no exception
     }
 
+    @Test
+    public void literalProcessorExpressionTextWithoutCommentIsLeftAlone() throws Docx4JException, IOException {
+        NameContext context = new NameContext();
+        context.setName("Homer");
+        WordprocessingMLPackage template = WordprocessingMLPackage.createPackage();
+        template.getMainDocumentPart().addParagraphOfText("Use #{no.such.property} in a comment to call a processor.");
+        DocxStamper<NameContext> stamper = new DocxStamper<>();
+
+        OutputStream out = getOutputStream();
+        stamper.stamp(template, context, out);
+        WordprocessingMLPackage document = WordprocessingMLPackage.load(getInputStream(out));
+
+        Assert.assertEquals("Use #{no.such.property} in a comment to call a processor.",
+                new ParagraphWrapper((P) document.getMainDocumentPart().getContent().get(0)).getText());
+    }
+
 }
@@ -1,7 +1,10 @@
 package org.wickedsource.docxstamper;
 
 import org.docx4j.openpackaging.exceptions.Docx4JException;
+import org.docx4j.dml.wordprocessingDrawing.Inline;
 import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.Part;
+import org.docx4j.openpackaging.parts.WordprocessingML.BinaryPartAbstractImage;
 import org.docx4j.wml.Drawing;
 import org.docx4j.wml.P;
 import org.docx4j.wml.R;
@@ -9,10 +12,18 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.wickedsource.docxstamper.context.ImageContext;
 import org.wickedsource.docxstamper.replace.typeresolver.image.Image;
+import org.wickedsource.docxstamper.replace.typeresolver.image.ImageSource;
+import org.wickedsource.docxstamper.replace.typeresolver.image.PreparedImageCache;
 
 import javax.xml.bind.JAXBElement;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ImageReplacementInGlobalParagraphsTest extends AbstractDocx4jTest {
 
@@ -30,5 +41,146 @@ public class ImageReplacementInGlobalParagraphsTest extends AbstractDocx4jTest {
 
     }
 
+    @Test
+    public void sameImageIsEmbeddedOnce() throws Docx4JException, IOException {
+        Image monalisa = new Image(getClass().getResourceAsStream("monalisa.jpg"));
+        ImageContext context = new ImageContext();
+        context.setMonalisa(monalisa);
+
+        InputStream template = getClass().getResourceAsStream("ImageReplacementInGlobalParagraphsTest.docx");
+        WordprocessingMLPackage document = stampAndLoad(template, context);
+
+        Assert.assertEquals(1, countImageParts(document));
+        Assert.assertEquals(getEmbedId(document, 2), getEmbedId(document, 3));
+    }
+
+    @Test
+    public void preparedImageIsReusedForFurtherDocuments() throws Docx4JException, IOException {
+        Image monalisa = new Image(getClass().getResourceAsStream("monalisa.jpg"));
+        ImageContext context = new ImageContext();
+        context.setMonalisa(monalisa);
+
+        PreparedImageCache cache = new PreparedImageCache();
+
+        WordprocessingMLPackage first = stampAndLoad(getClass().getResourceAsStream("ImageReplacementInGlobalParagraphsTest.docx"), context,
+                new DocxStamperConfiguration().setPreparedImageCache(cache));
+        Assert.assertEquals(0, cache.getHitCount());
+        WordprocessingMLPackage second = stampAndLoad(getClass().getResourceAsStream("ImageReplacementInGlobalParagraphsTest.docx"), context,
+                new DocxStamperConfiguration().setPreparedImageCache(cache));
+
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, countImageParts(second));
+        Assert.assertEquals(getInline(first, 2).getExtent().getCx(), getInline(second, 2).getExtent().getCx());
+        Assert.assertEquals(getInline(first, 2).getExtent().getCy(), getInline(second, 2).getExtent().getCy());
+    }
+
+    @Test
+    public void imageFromPathIsReadWhenStamped() throws Docx4JException, IOException {
+        Path file = Files.createTempFile("monalisa", ".jpg");
+        try {
+            Files.copy(getClass().getResourceAsStream("monalisa.jpg"), file, StandardCopyOption.REPLACE_EXISTING);
+            ImageContext context = new ImageContext();
+            context.setMonalisa(new Image(file));
+
+            WordprocessingMLPackage document = stampAndLoad(getClass().getResourceAsStream("ImageReplacementInGlobalParagraphsTest.docx"), context);
+
+            Assert.assertEquals(1, countImageParts(document));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void imageSourceIsNotReadBeforeStamping() throws Docx4JException, IOException {
+        final AtomicInteger openedStreams = new AtomicInteger();
+        ImageContext context = new ImageContext();
+        context.setMonalisa(new Image(new ImageSource() {
+            @Override
+            public InputStream openStream() {
+                openedStreams.incrementAndGet();
+                return getClass().getResourceAsStream("monalisa.jpg");
+            }
+        }));
+        Assert.assertEquals(0, openedStreams.get());
+
+        WordprocessingMLPackage document = stampAndLoad(getClass().getResourceAsStream("ImageReplacementInGlobalParagraphsTest.docx"), context);
+
+        Assert.assertTrue(openedStreams.get() > 0);
+        Assert.assertEquals(1, countImageParts(document));
+    }
+
+    @Test
+    public void imageSourceIsReadOncePerDocument() throws Docx4JException, IOException {
+        final AtomicInteger openedStreams = new AtomicInteger();
+        ImageContext context = new ImageContext();
+        context.setMonalisa(new Image(new ImageSource() {
+            @Override
+            public InputStream openStream() {
+                openedStreams.incrementAndGet();
+                return getClass().getResourceAsStream("monalisa.jpg");
+            }
+        }));
+
+        // the template shows the image twice
+        WordprocessingMLPackage document = stampAndLoad(getClass().getResourceAsStream("ImageReplacementInGlobalParagraphsTest.docx"), context);
+        Assert.assertEquals(1, openedStreams.get());
+        Assert.assertEquals(getEmbedId(document, 2), getEmbedId(document, 3));
+
+        stampAndLoad(getClass().getResourceAsStream("ImageReplacementInGlobalParagraphsTest.docx"), context);
+        Assert.assertEquals(2, openedStreams.get());
+    }
+
+    @Test
+    public void drawingIdsAreUniqueAndStableAcrossRuns() throws Docx4JException, IOException {
+        Image monalisa = new Image(getClass().getResourceAsStream("monalisa.jpg"));
+        ImageContext context = new ImageContext();
+        context.setMonalisa(monalisa);
+
+        WordprocessingMLPackage first = stampAndLoad(getClass().getResourceAsStream("ImageReplacementInGlobalParagraphsTest.docx"), context);
+        WordprocessingMLPackage second = stampAndLoad(getClass().getResourceAsStream("ImageReplacementInGlobalParagraphsTest.docx"), context);
+
+        long firstId = getInline(first, 2).getDocPr().getId();
+        long secondId = getInline(first, 3).getDocPr().getId();
+        Assert.assertTrue(firstId != secondId);
+        Assert.assertEquals(firstId, getInline(second, 2).getDocPr().getId());
+        Assert.assertEquals(secondId, getInline(second, 3).getDocPr().getId());
+    }
+
+    @Test
+    public void stampedDocumentCanBeGarbageCollected() throws Exception {
+        Image monalisa = new Image(getClass().getResourceAsStream("monalisa.jpg"));
+        ImageContext context = new ImageContext();
+        context.setMonalisa(monalisa);
+        WordprocessingMLPackage document = WordprocessingMLPackage.load(getClass().getResourceAsStream("ImageReplacementInGlobalParagraphsTest.docx"));
+        new DocxStamper<ImageContext>().stamp(document, context, new ByteArrayOutputStream());
+
+        WeakReference<WordprocessingMLPackage> reference = new WeakReference<>(document);
+        document = null;
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        Assert.assertNull(reference.get());
+    }
+
+    private int countImageParts(WordprocessingMLPackage document) {
+        int imageParts = 0;
+        for (Part part : document.getParts().getParts().values()) {
+            if (part instanceof BinaryPartAbstractImage) {
+                imageParts++;
+            }
+        }
+        return imageParts;
+    }
+
+    private String getEmbedId(WordprocessingMLPackage document, int paragraphIndex) {
+        return getInline(document, paragraphIndex).getGraphic().getGraphicData().getPic().getBlipFill().getBlip().getEmbed();
+    }
+
+    private Inline getInline(WordprocessingMLPackage document, int paragraphIndex) {
+        Drawing drawing = (Drawing) ((JAXBElement) ((R) ((P) document.getMainDocumentPart().getContent().get(paragraphIndex)).getContent().get(1)).getContent().get(0)).getValue();
+        return (Inline) drawing.getAnchorOrInline().get(0);
+    }
 
 }
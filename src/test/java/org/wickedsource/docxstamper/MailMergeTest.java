@@ -0,0 +1,247 @@
+package org.wickedsource.docxstamper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import org.docx4j.XmlUtils;
+import org.docx4j.dml.wordprocessingDrawing.Inline;
+import org.docx4j.openpackaging.exceptions.Docx4JException;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.wml.CTMarkup;
+import org.docx4j.wml.CommentRangeStart;
+import org.docx4j.wml.Drawing;
+import org.docx4j.wml.Numbering;
+import org.docx4j.wml.P;
+import org.docx4j.wml.R;
+import org.docx4j.wml.SectPr;
+import org.junit.Assert;
+import org.junit.Test;
+import org.wickedsource.docxstamper.context.DateContext;
+import org.wickedsource.docxstamper.context.ImageContext;
+import org.wickedsource.docxstamper.context.NameContext;
+import org.wickedsource.docxstamper.replace.typeresolver.image.Image;
+import org.wickedsource.docxstamper.util.CommentUtil;
+import org.wickedsource.docxstamper.util.ParagraphWrapper;
+
+public class MailMergeTest extends AbstractDocx4jTest {
+
+    @Test
+    public void eachContextIsStampedIntoOwnSection() throws Docx4JException, IOException {
+        assertMergedDocumentEqualsSingleDocuments("ExpressionReplacementInGlobalParagraphsTest.docx");
+    }
+
+    @Test
+    public void commentsAreProcessedInEachSection() throws Docx4JException, IOException {
+        assertMergedDocumentEqualsSingleDocuments("ConditionalDisplayOfParagraphsTest.docx");
+    }
+
+    @Test
+    public void drawingIdsOfResolvedImagesAreUniqueInMergedDocument() throws Docx4JException, IOException {
+        ImageContext context = new ImageContext();
+        context.setMonalisa(new Image(getClass().getResourceAsStream("monalisa.jpg")));
+        DocxStamper<ImageContext> stamper = new DocxStamper<>();
+
+        WordprocessingMLPackage merged = stampMerged(stamper,
+                stamper.compile(getClass().getResourceAsStream("ImageReplacementInGlobalParagraphsTest.docx")),
+                Arrays.asList(context, context, context));
+
+        assertDrawingIdsAreUnique(merged, 3 * 2 * 2);
+    }
+
+    @Test
+    public void drawingIdsOfCopiedImagesAreUniqueInMergedDocument() throws Docx4JException, IOException {
+        ImageContext context = new ImageContext();
+        context.setMonalisa(new Image(getClass().getResourceAsStream("monalisa.jpg")));
+        // a template that already contains images
+        OutputStream stamped = getOutputStream();
+        new DocxStamper<ImageContext>().stamp(getClass().getResourceAsStream("ImageReplacementInGlobalParagraphsTest.docx"), context, stamped);
+        DocxStamper<ImageContext> stamper = new DocxStamper<>();
+
+        WordprocessingMLPackage merged = stampMerged(stamper, stamper.compile(getInputStream(stamped)),
+                Arrays.asList(context, context, context));
+
+        assertDrawingIdsAreUnique(merged, 3 * 2 * 2);
+    }
+
+    @Test
+    public void numberedListsStartAnewInEachSection() throws Docx4JException, IOException {
+        DateContext context = new DateContext();
+        context.setDate(new Date());
+        DocxStamper<DateContext> stamper = new DocxStamper<>();
+
+        WordprocessingMLPackage merged = stampMerged(stamper,
+                stamper.compile(getClass().getResourceAsStream("DateReplacementTest.docx")),
+                Arrays.asList(context, context));
+
+        List<BigInteger> numIds = new ArrayList<>();
+        for (Object block : merged.getMainDocumentPart().getContent()) {
+            Object unwrapped = XmlUtils.unwrap(block);
+            if (unwrapped instanceof P && ((P) unwrapped).getPPr() != null && ((P) unwrapped).getPPr().getNumPr() != null) {
+                numIds.add(((P) unwrapped).getPPr().getNumPr().getNumId().getVal());
+            }
+        }
+        Assert.assertEquals(2, numIds.size());
+        Assert.assertEquals(BigInteger.ONE, numIds.get(0));
+        Numbering.Num restarted = getNum(merged, numIds.get(1));
+        Assert.assertEquals(BigInteger.ONE, restarted.getAbstractNumId().getVal());
+        Assert.assertEquals(BigInteger.ZERO, restarted.getLvlOverride().get(0).getIlvl());
+        Assert.assertNotNull(restarted.getLvlOverride().get(0).getStartOverride());
+    }
+
+    @Test
+    public void bookmarkAndCommentIdsAreUniqueInMergedDocument() throws Exception {
+        DocxStamper<NameContext> stamper = new DocxStamperConfiguration()
+                .setFailOnUnresolvedExpression(false)
+                .build();
+
+        WordprocessingMLPackage merged = stampMerged(stamper,
+                stamper.compile(getClass().getResourceAsStream("ExpressionReplacementWithCommentsTest.docx")),
+                Arrays.asList(name("Homer"), name("Bart"), name("Homer")));
+
+        // the template has one bookmark and two comments
+        List<BigInteger> bookmarkIds = getIds(merged, "//w:bookmarkStart");
+        Assert.assertEquals(3, bookmarkIds.size());
+        Assert.assertEquals(3, new HashSet<>(bookmarkIds).size());
+        Assert.assertEquals(new HashSet<>(bookmarkIds), new HashSet<>(getIds(merged, "//w:bookmarkEnd")));
+        List<BigInteger> commentIds = getIds(merged, "//w:commentRangeStart");
+        Assert.assertEquals(6, commentIds.size());
+        Assert.assertEquals(6, new HashSet<>(commentIds).size());
+        Assert.assertEquals(new HashSet<>(commentIds), new HashSet<>(getIds(merged, "//w:commentReference")));
+        Assert.assertTrue(CommentUtil.getCommentsById(merged).keySet().containsAll(commentIds));
+    }
+
+    @Test
+    public void sectionsStartOnNewPageEvenIfTemplateSectionIsContinuous() throws Exception {
+        WordprocessingMLPackage continuous = WordprocessingMLPackage.load(getClass().getResourceAsStream("ExpressionReplacementInGlobalParagraphsTest.docx"));
+        SectPr.Type type = new SectPr.Type();
+        type.setVal("continuous");
+        continuous.getMainDocumentPart().getContents().getBody().getSectPr().setType(type);
+        OutputStream template = getOutputStream();
+        continuous.save(template);
+        DocxStamper<NameContext> stamper = new DocxStamper<>();
+
+        WordprocessingMLPackage merged = stampMerged(stamper, stamper.compile(getInputStream(template)),
+                Arrays.asList(name("Homer"), name("Bart"), name("Homer")));
+
+        List<SectPr> sectPrs = new ArrayList<>();
+        for (Object block : merged.getMainDocumentPart().getContent()) {
+            Object unwrapped = XmlUtils.unwrap(block);
+            if (unwrapped instanceof P && ((P) unwrapped).getPPr() != null && ((P) unwrapped).getPPr().getSectPr() != null) {
+                sectPrs.add(((P) unwrapped).getPPr().getSectPr());
+            }
+        }
+        sectPrs.add(merged.getMainDocumentPart().getContents().getBody().getSectPr());
+        Assert.assertEquals(3, sectPrs.size());
+        for (SectPr sectPr : sectPrs) {
+            Assert.assertEquals("nextPage", sectPr.getType().getVal());
+        }
+    }
+
+    private <T> WordprocessingMLPackage stampMerged(DocxStamper<T> stamper, CompiledTemplate template, List<T> contexts) throws Docx4JException, IOException {
+        OutputStream out = getOutputStream();
+        stamper.stampMerged(template, contexts, out);
+        return WordprocessingMLPackage.load(getInputStream(out));
+    }
+
+    private void assertDrawingIdsAreUnique(WordprocessingMLPackage document, int expectedIds) {
+        List<Long> ids = new ArrayList<>();
+        for (Object block : document.getMainDocumentPart().getContent()) {
+            Object unwrapped = XmlUtils.unwrap(block);
+            if (unwrapped instanceof P) {
+                for (Object content : ((P) unwrapped).getContent()) {
+                    if (XmlUtils.unwrap(content) instanceof R) {
+                        for (Object runContent : ((R) XmlUtils.unwrap(content)).getContent()) {
+                            if (XmlUtils.unwrap(runContent) instanceof Drawing) {
+                                Inline inline = (Inline) ((Drawing) XmlUtils.unwrap(runContent)).getAnchorOrInline().get(0);
+                                ids.add(inline.getDocPr().getId());
+                                ids.add(inline.getGraphic().getGraphicData().getPic().getNvPicPr().getCNvPr().getId());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        Assert.assertEquals(expectedIds, ids.size());
+        Assert.assertEquals(ids.size(), new HashSet<>(ids).size());
+    }
+
+    private List<BigInteger> getIds(WordprocessingMLPackage document, String xpath) throws Exception {
+        List<BigInteger> ids = new ArrayList<>();
+        for (Object node : document.getMainDocumentPart().getJAXBNodesViaXPath(xpath, false)) {
+            Object unwrapped = XmlUtils.unwrap(node);
+            if (unwrapped instanceof CTMarkup) {
+                ids.add(((CTMarkup) unwrapped).getId());
+            } else if (unwrapped instanceof CommentRangeStart) {
+                ids.add(((CommentRangeStart) unwrapped).getId());
+            } else if (unwrapped instanceof R.CommentReference) {
+                ids.add(((R.CommentReference) unwrapped).getId());
+            }
+        }
+        return ids;
+    }
+
+    private Numbering.Num getNum(WordprocessingMLPackage document, BigInteger numId) throws Docx4JException {
+        for (Numbering.Num num : document.getMainDocumentPart().getNumberingDefinitionsPart().getContents().getNum()) {
+            if (numId.equals(num.getNumId())) {
+                return num;
+            }
+        }
+        throw new AssertionError("no list with id " + numId);
+    }
+
+    private void assertMergedDocumentEqualsSingleDocuments(String templateName) throws Docx4JException, IOException {
+        List<NameContext> contexts = Arrays.asList(name("Homer"), name("Bart"), name("Homer"));
+        DocxStamper<NameContext> stamper = new DocxStamper<>();
+
+        List<String> expected = new ArrayList<>();
+        for (NameContext context : contexts) {
+            if (!expected.isEmpty()) {
+                // the paragraph holding the section break
+                expected.add("");
+            }
+            expected.addAll(getParagraphTexts(stampAndLoad(getClass().getResourceAsStream(templateName), context)));
+        }
+
+        OutputStream out = getOutputStream();
+        stamper.stampMerged(stamper.compile(getClass().getResourceAsStream(templateName)), contexts, out);
+        InputStream in = getInputStream(out);
+        WordprocessingMLPackage merged = WordprocessingMLPackage.load(in);
+
+        Assert.assertEquals(expected, getParagraphTexts(merged));
+        Assert.assertEquals(contexts.size() - 1, countSectionBreaks(merged));
+    }
+
+    private NameContext name(String name) {
+        NameContext context = new NameContext();
+        context.setName(name);
+        return context;
+    }
+
+    private List<String> getParagraphTexts(WordprocessingMLPackage document) {
+        List<String> texts = new ArrayList<>();
+        for (Object block : document.getMainDocumentPart().getContent()) {
+            Object unwrapped = XmlUtils.unwrap(block);
+            texts.add(unwrapped instanceof P ? new ParagraphWrapper((P) unwrapped).getText() : unwrapped.getClass().getSimpleName());
+        }
+        return texts;
+    }
+
+    private int countSectionBreaks(WordprocessingMLPackage document) {
+        int sectionBreaks = 0;
+        for (Object block : document.getMainDocumentPart().getContent()) {
+            Object unwrapped = XmlUtils.unwrap(block);
+            if (unwrapped instanceof P && ((P) unwrapped).getPPr() != null && ((P) unwrapped).getPPr().getSectPr() != null) {
+                sectionBreaks++;
+            }
+        }
+        return sectionBreaks;
+    }
+
+}
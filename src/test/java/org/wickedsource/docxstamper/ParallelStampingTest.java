@@ -0,0 +1,84 @@
+package org.wickedsource.docxstamper;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.docx4j.openpackaging.exceptions.Docx4JException;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.wml.R;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.wickedsource.docxstamper.api.DocxStamperException;
+import org.wickedsource.docxstamper.api.typeresolver.ITypeResolver;
+import org.wickedsource.docxstamper.context.NameContext;
+
+public class ParallelStampingTest extends AbstractDocx4jTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void partsStampedInParallelEqualPartsStampedSequentially() throws Docx4JException, IOException {
+        NameContext context = new NameContext();
+        context.setName("Homer Simpson");
+        String templateName = "ExpressionReplacementInHeaderAndFooterTest.docx";
+
+        WordprocessingMLPackage expected = stampAndLoad(getClass().getResourceAsStream(templateName), context);
+        WordprocessingMLPackage actual = stampAndLoad(getClass().getResourceAsStream(templateName), context,
+                new DocxStamperConfiguration().setParallelExecutor(executor));
+
+        Assert.assertEquals(getText(expected), getText(actual));
+        Assert.assertTrue(getText(actual).contains("Homer Simpson"));
+    }
+
+    @Test
+    public void chunksOfMainDocumentStampedInParallelEqualMainDocumentStampedSequentially() throws Docx4JException, IOException {
+        NameContext context = new NameContext();
+        context.setName("Homer Simpson");
+        String templateName = "ExpressionReplacementInTablesTest.docx";
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            WordprocessingMLPackage expected = stampAndLoad(getClass().getResourceAsStream(templateName), context);
+            WordprocessingMLPackage actual = stampAndLoad(getClass().getResourceAsStream(templateName), context,
+                    new DocxStamperConfiguration()
+                            .setParallelExecutor(pool)
+                            .setParallelChunkSize(1));
+
+            Assert.assertEquals(getText(expected), getText(actual));
+            Assert.assertTrue(getText(actual).contains("Homer Simpson"));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failureInPartStampedInParallelIsRethrown() throws Docx4JException, IOException {
+        NameContext context = new NameContext();
+        context.setName("Homer Simpson");
+        try {
+            stampAndLoad(getClass().getResourceAsStream("ExpressionReplacementInHeaderAndFooterTest.docx"), context,
+                    new DocxStamperConfiguration()
+                            .setParallelExecutor(executor)
+                            .addTypeResolver(String.class, new FailingResolver()));
+            Assert.fail("DocxStamperException expected");
+        } catch (DocxStamperException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    private static class FailingResolver implements ITypeResolver<String, R> {
+
+        @Override
+        public R resolve(WordprocessingMLPackage document, String expressionResult) {
+            throw new IllegalStateException("Cannot resolve " + expressionResult);
+        }
+    }
+
+}
@@ -9,6 +9,7 @@ import org.wickedsource.docxstamper.api.coordinates.TableCellCoordinates;
 import org.wickedsource.docxstamper.api.coordinates.TableRowCoordinates;
 import org.wickedsource.docxstamper.context.Character;
 import org.wickedsource.docxstamper.context.CharactersContext;
+import org.wickedsource.docxstamper.el.ExpressionCache;
 import org.wickedsource.docxstamper.util.ParagraphWrapper;
 import org.wickedsource.docxstamper.util.walk.BaseCoordinatesWalker;
 import org.wickedsource.docxstamper.util.walk.CoordinatesWalker;
@@ -68,5 +69,20 @@ public class RepeatTableRowTest extends AbstractDocx4jTest {
         Assert.assertEquals("Dan Castellaneta", new ParagraphWrapper((P) cells.get(13).getCell().getContent().get(0)).getText());
     }
 
+    @Test
+    public void repeatedRowsAreResolvedWithTheConfiguredExpressionCache() throws Docx4JException, IOException {
+        CharactersContext context = new CharactersContext();
+        context.getCharacters().add(new Character("Homer Simpson", "Dan Castellaneta"));
+        context.getCharacters().add(new Character("Marge Simpson", "Julie Kavner"));
+        context.getCharacters().add(new Character("Bart Simpson", "Nancy Cartwright"));
+        ExpressionCache cache = new ExpressionCache();
+        DocxStamperConfiguration config = new DocxStamperConfiguration().setExpressionCache(cache);
+        InputStream template = getClass().getResourceAsStream("RepeatTableRowTest.docx");
+        stampAndLoad(template, context, config);
+
+        // the name and the actor of each character, all but the first lookup of each are hits
+        Assert.assertTrue(cache.getHitCount() >= 4);
+    }
+
 
 }
@@ -0,0 +1,59 @@
+package org.wickedsource.docxstamper.api.typeresolver;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.wickedsource.docxstamper.replace.typeresolver.DateResolver;
+import org.wickedsource.docxstamper.replace.typeresolver.FallbackResolver;
+
+public class TypeResolverRegistryTest {
+
+    private final ITypeResolver fallbackResolver = new FallbackResolver();
+
+    private final ITypeResolver dateResolver = new DateResolver("dd.MM.yyyy");
+
+    @Test
+    public void resolverOfSuperclassIsUsedForSubclass() {
+        TypeResolverRegistry registry = new TypeResolverRegistry(fallbackResolver);
+        registry.registerTypeResolver(Date.class, dateResolver);
+
+        Assert.assertSame(dateResolver, registry.getResolverForType(Date.class));
+        Assert.assertSame(dateResolver, registry.getResolverForType(Timestamp.class));
+        Assert.assertSame(fallbackResolver, registry.getResolverForType(String.class));
+    }
+
+    @Test
+    public void resolverOfInterfaceIsUsedForImplementation() {
+        TypeResolverRegistry registry = new TypeResolverRegistry(fallbackResolver);
+        ITypeResolver listResolver = new FallbackResolver();
+        registry.registerTypeResolver(List.class, listResolver);
+
+        Assert.assertSame(listResolver, registry.getResolverForType(ArrayList.class));
+    }
+
+    @Test
+    public void superclassTakesPrecedenceOverInterface() {
+        TypeResolverRegistry registry = new TypeResolverRegistry(fallbackResolver);
+        registry.registerTypeResolver(Serializable.class, new FallbackResolver());
+        registry.registerTypeResolver(Date.class, dateResolver);
+
+        Assert.assertSame(dateResolver, registry.getResolverForType(Timestamp.class));
+    }
+
+    @Test
+    public void resolverRegisteredAfterLookupIsFound() {
+        TypeResolverRegistry registry = new TypeResolverRegistry(fallbackResolver);
+        registry.registerTypeResolver(Date.class, dateResolver);
+        Assert.assertSame(dateResolver, registry.getResolverForType(Timestamp.class));
+
+        ITypeResolver timestampResolver = new DateResolver("dd.MM.yyyy");
+        registry.registerTypeResolver(Timestamp.class, timestampResolver);
+
+        Assert.assertSame(timestampResolver, registry.getResolverForType(Timestamp.class));
+    }
+}
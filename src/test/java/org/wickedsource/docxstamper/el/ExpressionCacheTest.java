@@ -0,0 +1,77 @@
+package org.wickedsource.docxstamper.el;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+
+public class ExpressionCacheTest {
+
+    private ExpressionParser parser = new SpelExpressionParser();
+
+    @Test
+    public void expressionIsParsedOnlyOnce() throws Exception {
+        ExpressionCache cache = new ExpressionCache();
+
+        Expression first = cache.get("name.toUpperCase()", parser);
+        Expression second = cache.get("name.toUpperCase()", parser);
+
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void expressionsOfDifferentParsersAreKeptApart() throws Exception {
+        ExpressionCache cache = new ExpressionCache();
+        ExpressionParser otherParser = new SpelExpressionParser();
+
+        Expression first = cache.get("name.toUpperCase()", parser);
+        Expression second = cache.get("name.toUpperCase()", otherParser);
+
+        Assert.assertNotSame(first, second);
+        Assert.assertSame(second, cache.get("name.toUpperCase()", otherParser));
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void cacheIsBounded() throws Exception {
+        ExpressionCache cache = new ExpressionCache(8);
+
+        for (int i = 0; i < 100; i++) {
+            cache.get("'expression" + i + "'", parser);
+        }
+
+        Assert.assertTrue(cache.size() <= 8);
+        Assert.assertTrue(cache.getEvictionCount() > 0);
+        Assert.assertEquals(100, cache.getMissCount());
+    }
+
+    @Test
+    public void recentlyUsedExpressionsSurviveEviction() throws Exception {
+        ExpressionCache cache = new ExpressionCache(8);
+        Expression hot = cache.get("'hot'", parser);
+
+        for (int i = 0; i < 100; i++) {
+            cache.get("'expression" + i + "'", parser);
+            Assert.assertSame(hot, cache.get("'hot'", parser));
+        }
+
+        Assert.assertEquals(100, cache.getHitCount());
+    }
+
+    @Test
+    public void maximumSizeZeroDisablesCaching() throws Exception {
+        ExpressionCache cache = new ExpressionCache(0);
+
+        cache.get("1 + 1", parser);
+        cache.get("1 + 1", parser);
+
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(0, cache.getHitCount());
+    }
+
+}
@@ -0,0 +1,120 @@
+package org.wickedsource.docxstamper.el;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.wickedsource.docxstamper.context.Character;
+import org.wickedsource.docxstamper.context.NameContext;
+
+public class ExpressionResolverTest {
+
+    @Test
+    public void compiledExpressionsAreResolved() throws Exception {
+        ExpressionResolver resolver = new ExpressionResolver(new NoOpEvaluationContextConfigurer(), new ExpressionCache(),
+                SpelCompilerMode.IMMEDIATE);
+        NameContext context = new NameContext();
+        context.setName("Homer");
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("Homer", resolver.resolveExpression("${name}", context));
+        }
+    }
+
+    @Test
+    public void compiledExpressionFallsBackToInterpretedModeForOtherContextRootType() throws Exception {
+        ExpressionCache cache = new ExpressionCache();
+        ExpressionResolver resolver = new ExpressionResolver(new NoOpEvaluationContextConfigurer(), cache,
+                SpelCompilerMode.IMMEDIATE);
+        NameContext context = new NameContext();
+        context.setName("Homer");
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("Homer", resolver.resolveExpression("${name}", context));
+        }
+        // the expression has been compiled against NameContext by now
+        Expression compiledExpression = cache.get("name", ExpressionResolver.getParser(SpelCompilerMode.IMMEDIATE));
+        Assert.assertEquals("Bart", resolver.resolveExpression("${name}", new Character("Bart", "Nancy Cartwright")));
+        Assert.assertEquals("Homer", resolver.resolveExpression("${name}", context));
+        // the fallback only applies to the failed evaluation, the cached expression is still the compiled one
+        Assert.assertSame(compiledExpression, cache.get("name", ExpressionResolver.getParser(SpelCompilerMode.IMMEDIATE)));
+    }
+
+    @Test
+    public void resolversShareCachedExpressionsOnlyWithinTheirCompilerMode() throws Exception {
+        ExpressionCache cache = new ExpressionCache();
+        NameContext context = new NameContext();
+        context.setName("Homer");
+
+        new ExpressionResolver(new NoOpEvaluationContextConfigurer(), cache, SpelCompilerMode.IMMEDIATE)
+                .resolveExpression("${name}", context);
+        new ExpressionResolver(new NoOpEvaluationContextConfigurer(), cache, SpelCompilerMode.IMMEDIATE)
+                .resolveExpression("${name}", context);
+        Assert.assertEquals(1, cache.getMissCount());
+
+        new ExpressionResolver(new NoOpEvaluationContextConfigurer(), cache, SpelCompilerMode.OFF)
+                .resolveExpression("${name}", context);
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void gettersEvaluatedBeforeCompiledExpressionFailsAreCalledAgainOnFallback() throws Exception {
+        ExpressionResolver resolver = new ExpressionResolver(new NoOpEvaluationContextConfigurer(), new ExpressionCache(),
+                SpelCompilerMode.IMMEDIATE);
+        CountingContext<NameContext> homer = new CountingContext<>(new NameContext());
+        homer.getValue().setName("Homer");
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("Homer", resolver.resolveExpression("${value.name}", homer));
+        }
+        CountingContext<Character> bart = new CountingContext<>(new Character("Bart", "Nancy Cartwright"));
+
+        Assert.assertEquals("Bart", resolver.resolveExpression("${value.name}", bart));
+        // once by the compiled expression that failed on the Character, once by the interpreted fallback
+        Assert.assertEquals(2, bart.getCalls());
+    }
+
+    public static class CountingContext<T> {
+
+        private final T value;
+
+        private int calls;
+
+        public CountingContext(T value) {
+            this.value = value;
+        }
+
+        public T getValue() {
+            calls++;
+            return value;
+        }
+
+        public int getCalls() {
+            return calls;
+        }
+    }
+
+    @Test
+    public void variablesArePushedAndPoppedOnReusedContext() throws Exception {
+        ExpressionResolver resolver = new ExpressionResolver();
+        NameContext context = new NameContext();
+        context.setName("Homer");
+
+        Assert.assertEquals("Homer", resolver.resolveExpression("${name}", context));
+        resolver.addVariable("child", "Bart");
+        Assert.assertEquals("Homer and Bart", resolver.resolveExpression("${name + ' and ' + #child}", context));
+        resolver.removeVariable("child");
+        Assert.assertNull(resolver.resolveExpression("${#child}", context));
+    }
+
+    @Test
+    public void reusedContextIsEvaluatedAgainstGivenContextRoot() throws Exception {
+        ExpressionResolver resolver = new ExpressionResolver();
+        NameContext homer = new NameContext();
+        homer.setName("Homer");
+
+        Assert.assertEquals("Homer", resolver.resolveExpression("${name}", homer));
+        Assert.assertEquals("Bart", resolver.resolveExpression("${#root.name}", new Character("Bart", "Nancy Cartwright")));
+    }
+
+}
@@ -43,6 +43,35 @@ public class ExpressionUtilTest {
         Assert.assertEquals("${ lorem ipsum }", placeholders.get(1));
     }
 
+    @Test
+    public void findsPlaceholdersWithNestedBraces() throws Exception {
+        String text = "lorem ipsum ${ {1, 2}.size() } lorem ipsum ${name + '}'} ${placeholder2}";
+
+        ExpressionUtil finder = new ExpressionUtil();
+        List<String> placeholders = finder.findVariableExpressions(text);
+
+        Assert.assertEquals(3, placeholders.size());
+        Assert.assertEquals("${ {1, 2}.size() }", placeholders.get(0));
+        Assert.assertEquals("${name + '}'}", placeholders.get(1));
+        Assert.assertEquals("${placeholder2}", placeholders.get(2));
+    }
+
+    @Test
+    public void findsVariableAndProcessorExpressionsInOnePass() throws Exception {
+        String text = "#{displayParagraphIf(true)}lorem ipsum ${placeholder1}";
+
+        ExpressionUtil finder = new ExpressionUtil();
+        List<ExpressionMatch> matches = finder.findExpressions(text);
+
+        Assert.assertEquals(2, matches.size());
+        Assert.assertTrue(matches.get(0).isProcessorExpression());
+        Assert.assertEquals(0, matches.get(0).getStart());
+        Assert.assertEquals("displayParagraphIf(true)", matches.get(0).getStrippedExpression(text));
+        Assert.assertFalse(matches.get(1).isProcessorExpression());
+        Assert.assertEquals(text.length(), matches.get(1).getEnd());
+        Assert.assertEquals("${placeholder1}", matches.get(1).getExpression(text));
+    }
+
     @Test
     public void returnsEmptyListOnEmptyText() {
         String text = "";
@@ -62,6 +91,7 @@ public class ExpressionUtilTest {
     public void stripsExpressions() {
         ExpressionUtil finder = new ExpressionUtil();
         Assert.assertEquals("myExpression", finder.stripExpression("${myExpression}"));
+        Assert.assertEquals("{1, 2}", finder.stripExpression("#{{1, 2}}"));
     }
 
     @Test(expected = IllegalArgumentException.class)
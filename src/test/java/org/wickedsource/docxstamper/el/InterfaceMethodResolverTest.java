@@ -0,0 +1,87 @@
+package org.wickedsource.docxstamper.el;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.expression.spel.SpelEvaluationException;
+import org.wickedsource.docxstamper.context.NameContext;
+
+public class InterfaceMethodResolverTest {
+
+    @Test
+    public void interfaceMethodsAreCallableOnContextRoot() throws Exception {
+        ExpressionResolver resolver = new ExpressionResolver();
+        InterfaceMethodResolver methodResolver = new InterfaceMethodResolver();
+        methodResolver.addInterface(Greeter.class, new GreeterImpl("Hello"));
+        resolver.addMethodResolver(methodResolver);
+        NameContext context = new NameContext();
+        context.setName("Homer");
+
+        Assert.assertEquals("Hello Homer", resolver.resolveExpression("${greet(name)}", context));
+        Assert.assertEquals("Homer", resolver.resolveExpression("${name}", context));
+    }
+
+    @Test(expected = SpelEvaluationException.class)
+    public void interfaceMethodsAreNotCallableOnOtherObjects() throws Exception {
+        ExpressionResolver resolver = new ExpressionResolver();
+        InterfaceMethodResolver methodResolver = new InterfaceMethodResolver();
+        methodResolver.addInterface(Greeter.class, new GreeterImpl("Hello"));
+        resolver.addMethodResolver(methodResolver);
+        NameContext context = new NameContext();
+        context.setName("Homer");
+
+        resolver.resolveExpression("${name.greet('Bart')}", context);
+    }
+
+    @Test(expected = SpelEvaluationException.class)
+    public void methodsNotDeclaredByInterfaceAreNotExposed() throws Exception {
+        ExpressionResolver resolver = new ExpressionResolver();
+        InterfaceMethodResolver methodResolver = new InterfaceMethodResolver();
+        methodResolver.addInterface(Greeter.class, new GreeterImpl("Hello"));
+        resolver.addMethodResolver(methodResolver);
+
+        resolver.resolveExpression("${getGreeting()}", new NameContext());
+    }
+
+    @Test
+    public void cachedExpressionCallsImplementationOfCurrentContext() throws Exception {
+        ExpressionCache cache = new ExpressionCache();
+        ExpressionResolver resolver1 = new ExpressionResolver(new NoOpEvaluationContextConfigurer(), cache);
+        InterfaceMethodResolver methodResolver1 = new InterfaceMethodResolver();
+        methodResolver1.addInterface(Greeter.class, new GreeterImpl("Hello"));
+        resolver1.addMethodResolver(methodResolver1);
+        ExpressionResolver resolver2 = new ExpressionResolver(new NoOpEvaluationContextConfigurer(), cache);
+        InterfaceMethodResolver methodResolver2 = new InterfaceMethodResolver();
+        methodResolver2.addInterface(Greeter.class, new GreeterImpl("Goodbye"));
+        resolver2.addMethodResolver(methodResolver2);
+        NameContext context = new NameContext();
+        context.setName("Homer");
+
+        Assert.assertEquals("Hello Homer", resolver1.resolveExpression("${greet(name)}", context));
+        Assert.assertEquals("Goodbye Homer", resolver2.resolveExpression("${greet(name)}", context));
+        Assert.assertEquals("Hello Homer", resolver1.resolveExpression("${greet(name)}", context));
+    }
+
+    public interface Greeter {
+
+        String greet(String name);
+
+    }
+
+    public static class GreeterImpl implements Greeter {
+
+        private final String greeting;
+
+        public GreeterImpl(String greeting) {
+            this.greeting = greeting;
+        }
+
+        public String getGreeting() {
+            return greeting;
+        }
+
+        @Override
+        public String greet(String name) {
+            return greeting + " " + name;
+        }
+    }
+}
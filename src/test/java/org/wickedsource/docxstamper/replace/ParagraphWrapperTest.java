@@ -81,6 +81,25 @@ public class ParagraphWrapperTest {
         Assert.assertEquals("Yoda", wrapper.getText());
     }
 
+    @Test
+    public void rangesAreReplacedFromRightToLeft() {
+        ParagraphWrapper wrapper = new ParagraphWrapper(ParagraphUtil.create("${a} and ${", "b} and ", "${c}"));
+        wrapper.replace(18, 22, RunUtil.create("Lisa"));
+        wrapper.replace(9, 13, RunUtil.create("Bart"));
+        wrapper.replace(0, 4, RunUtil.create("Homer"));
+        Assert.assertEquals("Homer and Bart and Lisa", wrapper.getText());
+    }
+
+    @Test
+    public void indexIsUpdatedAfterReplace() {
+        ParagraphWrapper wrapper = new ParagraphWrapper(ParagraphUtil.create("${a} and ${", "b} and ", "${c}"));
+        wrapper.replace("${b}", RunUtil.create("Bart"));
+        wrapper.replace("${a}", RunUtil.create("Homer"));
+        wrapper.replace("${c}", RunUtil.create("Lisa"));
+        Assert.assertEquals("Homer and Bart and Lisa", wrapper.getText());
+        Assert.assertEquals("Homer and Bart and Lisa", new ParagraphWrapper(wrapper.getParagraph()).getText());
+    }
+
     private ParagraphWrapper loremIpsum() {
         return new ParagraphWrapper(ParagraphUtil.create("lorem", " ", "ipsum"));
     }
@@ -0,0 +1,100 @@
+package org.wickedsource.docxstamper.replace.typeresolver;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.wickedsource.docxstamper.util.RunUtil;
+
+public class TemporalResolverTest {
+
+    @Test
+    public void localDateIsFormatted() throws Exception {
+        if (!TemporalResolver.isSupported()) {
+            return;
+        }
+        // java.time is created by reflection, since the tests are compiled for Java 7 as well
+        Object localDate = Class.forName("java.time.LocalDate").getMethod("of", int.class, int.class, int.class)
+                .invoke(null, 2017, 3, 14);
+
+        TemporalResolver resolver = new TemporalResolver("dd.MM.yyyy");
+
+        Assert.assertEquals("14.03.2017", RunUtil.getText(resolver.resolve(null, localDate)));
+    }
+
+    @Test
+    public void instantIsFormattedInTimeZone() throws Exception {
+        if (!TemporalResolver.isSupported()) {
+            return;
+        }
+        Object instant = Class.forName("java.time.Instant").getMethod("ofEpochSecond", long.class)
+                .invoke(null, 1489449600L);
+
+        TemporalResolver resolver = new TemporalResolver("dd.MM.yyyy HH:mm", TimeZone.getTimeZone("UTC"));
+
+        Assert.assertEquals("14.03.2017 00:00", RunUtil.getText(resolver.resolve(null, instant)));
+    }
+
+    @Test
+    public void shortTimeZoneIdsAreSupported() throws Exception {
+        if (!TemporalResolver.isSupported()) {
+            return;
+        }
+        Object instant = Class.forName("java.time.Instant").getMethod("ofEpochSecond", long.class)
+                .invoke(null, 1489449600L);
+
+        TemporalResolver resolver = new TemporalResolver("dd.MM.yyyy HH:mm", TimeZone.getTimeZone("PST"));
+
+        Assert.assertEquals("13.03.2017 17:00", RunUtil.getText(resolver.resolve(null, instant)));
+        Assert.assertEquals("13.03.2017 17:00", RunUtil.getText(new DateResolver("dd.MM.yyyy HH:mm", TimeZone.getTimeZone("PST"))
+                .resolve(null, new Date(1489449600000L))));
+    }
+
+    @Test
+    public void dateResolverKeepsSimpleDateFormatMeaning() throws Exception {
+        Date date = new Date(1489449600000L);
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        for (String format : new String[]{"[dd.MM.yyyy]", "dd.MM.yyyy u", "dd.MM.yyyy #{}"}) {
+            SimpleDateFormat simpleDateFormat = new SimpleDateFormat(format);
+            simpleDateFormat.setTimeZone(utc);
+
+            DateResolver resolver = new DateResolver(format, utc);
+
+            Assert.assertEquals(simpleDateFormat.format(date), RunUtil.getText(resolver.resolve(null, date)));
+        }
+    }
+
+    @Test
+    public void dateResolverFormatsConcurrently() throws Exception {
+        final DateResolver resolver = new DateResolver("dd.MM.yyyy HH:mm:ss");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Date> dates = new ArrayList<>();
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final Date date = new Date(i * 86400000L + i * 1000L);
+                dates.add(date);
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return RunUtil.getText(resolver.resolve(null, date));
+                    }
+                }));
+            }
+            SimpleDateFormat format = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+            for (int i = 0; i < dates.size(); i++) {
+                Assert.assertEquals(format.format(dates.get(i)), results.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
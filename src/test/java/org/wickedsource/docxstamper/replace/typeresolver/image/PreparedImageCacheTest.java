@@ -0,0 +1,53 @@
+package org.wickedsource.docxstamper.replace.typeresolver.image;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.wickedsource.docxstamper.replace.typeresolver.image.PreparedImageCache.PreparedImage;
+
+public class PreparedImageCacheTest {
+
+    @Test
+    public void cacheIsBounded() throws Exception {
+        PreparedImageCache cache = new PreparedImageCache(8);
+
+        for (int i = 0; i < 100; i++) {
+            cache.put(digest(i), new PreparedImage("image/png", "png", null, null));
+        }
+
+        Assert.assertTrue(cache.size() <= 8);
+        Assert.assertTrue(cache.getEvictionCount() > 0);
+    }
+
+    @Test
+    public void recentlyUsedImagesSurviveEviction() throws Exception {
+        PreparedImageCache cache = new PreparedImageCache(8);
+        PreparedImage hot = new PreparedImage("image/png", "png", null, null);
+        cache.put(digest(-1), hot);
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertNull(cache.get(digest(i)));
+            cache.put(digest(i), new PreparedImage("image/png", "png", null, null));
+            Assert.assertSame(hot, cache.get(digest(-1)));
+        }
+
+        Assert.assertEquals(100, cache.getHitCount());
+        Assert.assertEquals(100, cache.getMissCount());
+    }
+
+    @Test
+    public void maximumSizeZeroDisablesCaching() throws Exception {
+        PreparedImageCache cache = new PreparedImageCache(0);
+
+        cache.put(digest(1), new PreparedImage("image/png", "png", null, null));
+
+        Assert.assertNull(cache.get(digest(1)));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    private ByteBuffer digest(int i) {
+        return ByteBuffer.wrap(Integer.toString(i).getBytes());
+    }
+
+}
@@ -2,11 +2,15 @@ package org.wickedsource.docxstamper.util;
 
 import org.docx4j.openpackaging.exceptions.Docx4JException;
 import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.wml.Comments;
 import org.docx4j.wml.P;
 import org.junit.Assert;
 import org.junit.Test;
 import org.wickedsource.docxstamper.AbstractDocx4jTest;
 
+import java.math.BigInteger;
+import java.util.Map;
+
 public class CommentUtilTest extends AbstractDocx4jTest {
 
     @Test
@@ -26,4 +30,30 @@ public class CommentUtilTest extends AbstractDocx4jTest {
         Assert.assertNull(CommentUtil.getCommentFor(p5, document));
     }
 
+    @Test
+    public void commentsAreLookedUpInIndex() throws Docx4JException {
+        WordprocessingMLPackage document = loadDocument("CommentUtilTest.docx");
+        Map<BigInteger, Comments.Comment> commentsById = CommentUtil.getCommentsById(document);
+
+        P p1 = (P) document.getMainDocumentPart().getContent().get(0);
+        P p2 = (P) document.getMainDocumentPart().getContent().get(1);
+
+        Assert.assertNull(CommentUtil.getCommentFor(p1, commentsById));
+        Assert.assertEquals("Comment for paragraph 2.", CommentUtil.getCommentString(CommentUtil.getCommentFor(p2, commentsById)));
+        Assert.assertSame(CommentUtil.getCommentFor(p2, document), CommentUtil.getCommentFor(p2, commentsById));
+    }
+
+    @Test
+    public void commentRangesAreCombinedWithIndexedComments() throws Docx4JException {
+        WordprocessingMLPackage document = loadDocument("CommentUtilTest.docx");
+        Map<BigInteger, Comments.Comment> commentsById = CommentUtil.getCommentsById(document);
+
+        Map<BigInteger, CommentWrapper> comments = CommentUtil.getComments(document, commentsById);
+
+        Assert.assertEquals(CommentUtil.getComments(document).keySet(), comments.keySet());
+        for (Map.Entry<BigInteger, CommentWrapper> entry : comments.entrySet()) {
+            Assert.assertSame(commentsById.get(entry.getKey()), entry.getValue().getComment());
+        }
+    }
+
 }
\ No newline at end of file
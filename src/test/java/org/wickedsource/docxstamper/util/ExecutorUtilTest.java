@@ -0,0 +1,36 @@
+package org.wickedsource.docxstamper.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.wickedsource.docxstamper.api.DocxStamperException;
+
+public class ExecutorUtilTest {
+
+    @Test
+    public void virtualThreadExecutorRunsTasksOnVirtualThreads() throws Exception {
+        if (!ExecutorUtil.isVirtualThreadSupported()) {
+            try {
+                ExecutorUtil.newVirtualThreadPerTaskExecutor();
+                Assert.fail("DocxStamperException expected");
+            } catch (DocxStamperException e) {
+                // expected on JVMs before Java 21
+            }
+            return;
+        }
+        ExecutorService executor = ExecutorUtil.newVirtualThreadPerTaskExecutor();
+        try {
+            Boolean virtual = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+                }
+            }).get();
+            Assert.assertTrue(virtual);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
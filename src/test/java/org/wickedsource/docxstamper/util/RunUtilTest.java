@@ -32,4 +32,24 @@ public class RunUtilTest extends AbstractDocx4jTest {
         Assert.assertEquals("The text of this run was changed.", RunUtil.getText(run));
     }
 
+    @Test
+    public void appendTextAndGetTextLengthMatchGetText() throws Docx4JException {
+        WordprocessingMLPackage document = loadDocument("singleRun.docx");
+        P paragraph = (P) document.getMainDocumentPart().getContent().get(0);
+        R run = (R) paragraph.getContent().get(0);
+        StringBuilder buffer = new StringBuilder("prefix:");
+        RunUtil.appendText(run, buffer);
+        Assert.assertEquals("prefix:" + RunUtil.getText(run), buffer.toString());
+        Assert.assertEquals(RunUtil.getText(run).length(), RunUtil.getTextLength(run));
+    }
+
+    @Test
+    public void containsCharFindsCharacterInAnyRunOfParagraph() throws Docx4JException {
+        WordprocessingMLPackage document = loadDocument("singleRun.docx");
+        P paragraph = (P) document.getMainDocumentPart().getContent().get(0);
+        Assert.assertFalse(RunUtil.containsChar(paragraph, '$'));
+        paragraph.getContent().add(RunUtil.create("${name}"));
+        Assert.assertTrue(RunUtil.containsChar(paragraph, '$'));
+    }
+
 }
\ No newline at end of file